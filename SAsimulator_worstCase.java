@@ -1,4 +1,3 @@
-@@ -0,0 +1,926 @@
 
 /*************************************************************************
  *
@@ -13,25 +12,61 @@
  *  Laxities must be powers of 2 (for arbitrary add code to round them down first)
  *  For each parameter combination (N, WMAX, factor, arrivals)
  *  - input file with the following columns: {id, arrival time, laxity, 1/laxity, departure time}
+ *    or the same file converted to binary format by traceConverter (.bin instead of .txt, used if it exists)
+ *    or an XML file produced by inputGen (.xml)
+ *  - or, given a seed as argument, clients generated in memory as inputGenWC would with that seed
  *
  *  Output: 
  *  - Output to a file alpha max and beta max for each parameter combination.
+ *  Parameter combinations are simulated concurrently, one per available processor, results are output in grid order.
  *
  *  Classes and data structures:
  *  public class SAsimulator__worstCase  // this simulator implemented as a list of classes and an array of clients
  *  class group                     // a class of stations implemented as a list of stations
- *  class station                   // a station implemented as a matrix (rows are trees and trees are arrays)
- *  class client                    // all fields of a client
+ *  class station                   // a station implemented as an array of ints (trees one after the other)
+ *  class clients                   // all fields of all clients, one array per field
+ *  class timeline                  // arrival and departure events bucketed by time slot
+ *  class traceReader               // parser of the columns of a trace file mapped in memory
+ *  class binaryTrace               // reader of a trace file in binary format mapped in memory
+ *  class xmlTrace                  // streaming reader of a trace file in the XML format of inputGen
+ *  class workload                  // in-memory source of clients from the distributions of inputGenWC
+ *  class profile                   // work counters and latency histograms, on with -Dprofile=true
+ *  class clientEvent, ...          // JDK Flight Recorder events of the operations of the simulator
  *
  *   Remarks
  *   -------
  *
  *  Compile with option -ea to activate invariant checker
  *
+ *  Within a station holes are consolidated in place (see station.reallocateWithinStation) instead of
+ *  resetting the station and adding its clients again as the code of the paper did. The stations end up
+ *  with a different but equally valid layout, so the statuses differ from the ones of the paper code, and
+ *  so may alpha max and beta max (on the bundled 4000-client inputs only beta max of LOGARITHMIC with
+ *  uniform arrivals changes, from 6.0 to 7.0).
+ *
  *************************************************************************/
 
 import java.io.*;
 import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.concurrent.*;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
 
 
 /*************************************************************************
@@ -46,25 +81,42 @@ import java.util.*;
  *
  *  Data fields:
  private ArrayList<group> groups = new ArrayList<group>();            // we use the name 'group' to avoid 'class'
- private client[] clientSet;                                          // list of clients with their attributes
- private client hole = new client();         // non-existent client to mark a hole (id=0 => make all client ID's >0)
+ private group[] classIndex = new group[31];                          // group of the laxities 2^e, indexed by e (null if none)
+ private clients clientSet;                                           // list of clients with their attributes
  private int factor=0;                         // type of simulator
  private double departedWeight=0;              // weight of departed clients
  private double activeWeight=0;                // weight of active clients
  private double currentReallocatedWeight=0;    // weight of clients reallocated in the current time step
+ private int stations=0;                       // number of active stations
+ private int activeClients=0;                  // number of active clients (occupied nodes)
+ private profile counters;                     // work counters and latencies (null if off)
  *
  *  Methods:
  SAsimulator_worstCase(int factor, File file, int N){
- public void add(client myClient){
- public boolean delete(client myClient){
+ SAsimulator_worstCase(int factor, workload source){
+ public void add(int myClient){
+ public boolean delete(int myClient){
  public void reallocate(int time){
  public int numberOfStations(){
+ public int numberOfClients(){
+ public int numberOfStations(int laxity){
+ public int numberOfClients(int laxity){
+ private int countStations(){
  public String status(){
- private int[] limits(client myClient, int factor){ // works only for powers of 2
- private void readInput(File file, client[] clientSet){
+ private void indexClass(group myGroup){
+ private static long[] limits(long laxity, int factor){ // works only for powers of 2
+ private void readInput(File file, clients clientSet){
+ private void readBinary(File file, clients clientSet){
+ private void readXML(File file, clients clientSet){
+ private void readWorkload(workload source, clients clientSet){
+ private int check(clients clientSet, int i, idTable positions, String unit, int position){
  public void printStructure(){
  public boolean contains(int id){
  public static void main(String[] args){
+ private static double[] simCaller(int N, int factor, int arrivals, int WMAX){
+ private static double[] simCaller(int N, int factor, int arrivals, int WMAX, long seed){
+ private static double[] simulate(SAsimulator_worstCase mySim, int N, String combination){
+ private void endStep(int t, boolean departures, double[] alphabetaMax){
  *
  *   Remarks
  *   -------
@@ -81,63 +133,106 @@ public class SAsimulator_worstCase{
     final static int UNIFORM = 1;
     final static int BATCHED = 2;
     final static int POISSON = 3;
+    // class bounds of the laxities 2^e, for each type of simulator: CLASS_WMIN[factor][e] <= 2^e < CLASS_WMAX[factor][e]
+    // laxities 2^e with e >= CLASS_WMIN[factor].length belong to classes too large for a station
+    final static int[][] CLASS_WMIN = new int[LINEAR+1][];
+    final static int[][] CLASS_WMAX = new int[LINEAR+1][];
+    static{
+        long[] bounds = null;
+        int e = 0;
+        for(int f=CONSTANT; f<=LINEAR; f++){
+            CLASS_WMIN[f] = new int[31];
+            CLASS_WMAX[f] = new int[31];
+            for(e=0; e<31; e++){
+                bounds = limits(1L<<e, f);
+                if(bounds[1] > (1<<30)) break;      // the class and all the following do not fit in a station
+                CLASS_WMIN[f][e] = (int)bounds[0];
+                CLASS_WMAX[f][e] = (int)bounds[1];
+            }
+            CLASS_WMIN[f] = Arrays.copyOf(CLASS_WMIN[f], e);
+            CLASS_WMAX[f] = Arrays.copyOf(CLASS_WMAX[f], e);
+        }
+    }
 
     // data fields
     private ArrayList<group> groups = new ArrayList<group>();            // we use the name 'group' to avoid 'class'
-    private client[] clientSet;                                          // list of clients with their attributes
-    private client hole = new client();         // non-existent client to mark a hole (id=0 => make all client ID's >0)
+    private group[] classIndex = new group[31];                          // group of the laxities 2^e, indexed by e (null if none)
+    private clients clientSet;                                           // list of clients with their attributes
     private int factor=0;                         // type of simulator
     private double departedWeight=0;              // weight of departed clients
     private double activeWeight=0;                // weight of active clients
     private double currentReallocatedWeight=0;    // weight of clients reallocated in the current time step
+    private int stations=0;                       // number of active stations
+    private int activeClients=0;                  // number of active clients, each one takes one node of a station (occupied nodes)
+    private profile counters = (profile.ENABLED) ? new profile() : null;   // work counters and latencies (null if off)
     
     // constructor
     SAsimulator_worstCase(int factor, File file, int N){
-        this.clientSet = new client[N];
+        this.clientSet = new clients(N);
         // read input file
         readInput(file, this.clientSet);
         this.factor = factor;
     }
     
+    // constructor from clients generated in memory, without input file
+    SAsimulator_worstCase(int factor, workload source){
+        this.clientSet = new clients(source.size());
+        readWorkload(source, this.clientSet);
+        this.factor = factor;
+    }
+    
     /////////////
     // ADD
     /////////////
     // adds client to the schedule
-    public void add(client myClient){
+    public void add(int myClient){
+        long start = (profile.ENABLED) ? System.nanoTime() : 0;
         // update status
-        this.activeWeight += ((double)1)/((double)myClient.laxity);
+        this.activeWeight += ((double)1)/((double)this.clientSet.laxity[myClient]);
+        this.activeClients++;
         // find if the new client fits in one of the existing groups
-        for(int i=0; i<this.groups.size(); i++){
-            if (this.groups.get(i).wMax > myClient.laxity && myClient.laxity >= this.groups.get(i).wMin){
-                // add to this group
-                this.groups.get(i).add(myClient, this.hole);
-                return;
-            }
+        int e = 31-Integer.numberOfLeadingZeros(this.clientSet.laxity[myClient]);   // laxities are powers of 2
+        if (this.classIndex[e]!=null){
+            // add to this group, a new station may be created
+            int stationsBefore = this.classIndex[e].numberOfStations();
+            this.classIndex[e].add(myClient);
+            this.stations += this.classIndex[e].numberOfStations()-stationsBefore;
+            if(profile.ENABLED) this.counters.time(profile.ADD, System.nanoTime()-start);
+            return;
         }
         // new client does not fit in any of the existing groups, create a new one
         // find out which group should this client be added
-        int[] bounds = limits(myClient, this.factor);
+        if (e>=CLASS_WMIN[this.factor].length){
+            System.out.println("Class of laxity "+this.clientSet.laxity[myClient]+" too large for a station, simulator stopped.");
+            System.exit(0);
+        }
         // add a new group with those bounds to the list of groups
-        group newGroup = new group(bounds[1],bounds[0]);
+        group newGroup = new group(CLASS_WMAX[this.factor][e],CLASS_WMIN[this.factor][e],this.clientSet,this.counters);
         this.groups.add(newGroup);
+        indexClass(newGroup);
         // add the new client to the new group
-        newGroup.add(myClient, this.hole);
+        newGroup.add(myClient);
+        this.stations += newGroup.numberOfStations();
+        if(profile.ENABLED) this.counters.time(profile.ADD, System.nanoTime()-start);
     }
 
     /////////////
     // DELETE
     /////////////
     // removes client from the schedule
-    public boolean delete(client myClient){
+    public boolean delete(int myClient){
+        long start = (profile.ENABLED) ? System.nanoTime() : 0;
         // update status
-        this.activeWeight -= ((double)1)/((double)myClient.laxity);
-        this.departedWeight += ((double)1)/((double)myClient.laxity);
+        this.activeWeight -= ((double)1)/((double)this.clientSet.laxity[myClient]);
+        this.departedWeight += ((double)1)/((double)this.clientSet.laxity[myClient]);
         // find the client's group
-        for(int i=0; i<this.groups.size(); i++){
-            if (this.groups.get(i).wMax > myClient.laxity && myClient.laxity >= this.groups.get(i).wMin){
-                // remove from this group
-                return this.groups.get(i).delete(myClient, this.hole);
-            }
+        group myGroup = this.classIndex[31-Integer.numberOfLeadingZeros(this.clientSet.laxity[myClient])];
+        if (myGroup!=null){
+            // remove from this group
+            if(!myGroup.delete(myClient)) return false;
+            this.activeClients--;
+            if(profile.ENABLED) this.counters.time(profile.DELETE, System.nanoTime()-start);
+            return true;
         }
         // if we get here there was an error
         return false;
@@ -147,18 +242,58 @@ public class SAsimulator_worstCase{
     // REALLLOCATE
     ///////////////
     // reallocates clients to restore the invariant
+    // the weight of the reallocated clients is added to the reallocated weight of the current time step
+    // throws IllegalStateException if a scheduled reallocation could not be performed, the simulator is then inconsistent
     public void reallocate(int time){
-        // clients are reallocated within their class only
+        long start = (profile.ENABLED) ? System.nanoTime() : 0;
+        // clients are reallocated within their class only, empty stations are removed
+        int stationsBefore = 0;
         for(int i=0; i<this.groups.size(); i++){
-            if(this.groups.get(i).numberOfStations()>0) this.groups.get(i).reallocate(time, this.hole);
+            stationsBefore = this.groups.get(i).numberOfStations();
+            if(stationsBefore>0) this.currentReallocatedWeight += this.groups.get(i).reallocate(time);
+            this.stations += this.groups.get(i).numberOfStations()-stationsBefore;
+        }
+        // eliminate empty classes (backwards, so that removing one does not skip the next one)
+        boolean removed = false;
+        for(int i=this.groups.size()-1; i>=0; i--)
+            if(this.groups.get(i).numberOfStations()==0){
+                this.groups.remove(i);
+                removed = true;
+            }
+        // rebuild the class index from the remaining groups
+        if(removed){
+            Arrays.fill(this.classIndex, null);
+            for(int i=0; i<this.groups.size(); i++)
+                indexClass(this.groups.get(i));
         }
-        // eliminate empty classes
-        for(int i=0; i<this.groups.size(); i++)
-            if(this.groups.get(i).numberOfStations()==0) this.groups.remove(i);
+        assert this.stations==this.countStations(): "Number of stations out of date after reallocation.";
+        if(profile.ENABLED) this.counters.time(profile.REALLOCATE, System.nanoTime()-start);
     }
     
-    // computes number of active stations
+    // number of active stations, kept up to date by add and reallocate
     public int numberOfStations(){
+        return this.stations;
+    }
+    
+    // number of active clients, which is also the number of occupied nodes
+    public int numberOfClients(){
+        return this.activeClients;
+    }
+    
+    // number of active stations of the class of the given laxity (a power of 2), 0 if the class has none
+    public int numberOfStations(int laxity){
+        group myGroup = this.classIndex[31-Integer.numberOfLeadingZeros(laxity)];
+        return (myGroup==null) ? 0 : myGroup.numberOfStations();
+    }
+    
+    // number of active clients of the class of the given laxity (a power of 2), 0 if the class has none
+    public int numberOfClients(int laxity){
+        group myGroup = this.classIndex[31-Integer.numberOfLeadingZeros(laxity)];
+        return (myGroup==null) ? 0 : myGroup.numberOfClients();
+    }
+    
+    // for checking: counts the active stations of all the groups
+    private int countStations(){
         int counter=0;
         for(int i=0; i<this.groups.size();i++)
             counter+=this.groups.get(i).numberOfStations();
@@ -170,26 +305,32 @@ public class SAsimulator_worstCase{
         return "departed_weight= "+this.departedWeight+" H= "+Math.ceil(this.activeWeight)+" stations= "+this.numberOfStations()+" reallocated_weight= "+this.currentReallocatedWeight+" active-weight= "+this.activeWeight;
     }
 
-    //finds the class of the given client
-    private int[] limits(client myClient, int factor){ // works only for powers of 2
-        int [] bounds = new int[2];     //return 2 values
+    // points the class index to the given group for the laxities of its class not already taken by an earlier group
+    private void indexClass(group myGroup){
+        for(int e=31-Integer.numberOfLeadingZeros(myGroup.wMin); e<31 && (1<<e)<myGroup.wMax; e++)
+            if(this.classIndex[e]==null) this.classIndex[e] = myGroup;
+    }
+
+    //finds the class of the given laxity, used to precompute the class bounds
+    private static long[] limits(long laxity, int factor){ // works only for powers of 2
+        long [] bounds = new long[2];     //return 2 values
         bounds[0]=1;
         bounds[1]=2;
-        if (myClient.laxity < bounds[1] && myClient.laxity >= bounds[0]) return bounds;
+        if (laxity < bounds[1] && laxity >= bounds[0]) return bounds;
         bounds[0]=2;
         bounds[1]=4;
-        if (myClient.laxity < bounds[1] && myClient.laxity >= bounds[0]) return bounds;
+        if (laxity < bounds[1] && laxity >= bounds[0]) return bounds;
         bounds[0]=4;
         switch(factor){
             case CONSTANT:
-                while(myClient.laxity >= 2*bounds[0])
+                while(laxity >= 2*bounds[0])
                     bounds[0] = 2*bounds[0];
                 bounds[1] = 2*bounds[0];
                 break;
             case LOGARITHMIC:
-                while(myClient.laxity >= bounds[0]*(31 - Integer.numberOfLeadingZeros(bounds[0])))
-                    bounds[0] = bounds[0]*(31 - Integer.numberOfLeadingZeros(bounds[0]));
-                bounds[1] = bounds[0]*(31 - Integer.numberOfLeadingZeros(bounds[0]));
+                while(laxity >= bounds[0]*(63 - Long.numberOfLeadingZeros(bounds[0])))
+                    bounds[0] = bounds[0]*(63 - Long.numberOfLeadingZeros(bounds[0]));
+                bounds[1] = bounds[0]*(63 - Long.numberOfLeadingZeros(bounds[0]));
                 // round up to next power of 2 if not a power of 2 already
                 // for instance, for max window = 1024, the classes must be
                 // [1,2)
@@ -198,13 +339,13 @@ public class SAsimulator_worstCase{
                 // 8,24 -> [8,32)
                 // 24,110 -> [32,128)
                 // 110,745 -> [128,1024)
-                if(bounds[0] != 1<<(31-Integer.numberOfLeadingZeros(bounds[0])))
-                    bounds[0] = 1<<(32-Integer.numberOfLeadingZeros(bounds[0]));
-                if(bounds[1] != 1<<(31-Integer.numberOfLeadingZeros(bounds[1])))
-                    bounds[1] = 1<<(32-Integer.numberOfLeadingZeros(bounds[1]));
+                if(bounds[0] != 1L<<(63-Long.numberOfLeadingZeros(bounds[0])))
+                    bounds[0] = 1L<<(64-Long.numberOfLeadingZeros(bounds[0]));
+                if(bounds[1] != 1L<<(63-Long.numberOfLeadingZeros(bounds[1])))
+                    bounds[1] = 1L<<(64-Long.numberOfLeadingZeros(bounds[1]));
                 break;
             default:    //LINEAR
-                while(myClient.laxity >= bounds[0]*bounds[0])
+                while(laxity >= bounds[0]*bounds[0])
                     bounds[0] = bounds[0]*bounds[0];
                 bounds[1] = bounds[0]*bounds[0];
         }
@@ -215,7 +356,7 @@ public class SAsimulator_worstCase{
     public void printStructure(){
         System.out.println("Structure print out: ");
         for(int i=0;i<this.groups.size(); i++){
-            this.groups.get(i).print(hole);
+            this.groups.get(i).print();
         }
     }
     
@@ -223,7 +364,7 @@ public class SAsimulator_worstCase{
     public boolean contains(int id){
         boolean result=false;
         for(int h=0;h<this.groups.size();h++){
-            if(this.groups.get(h).contains(id,this.hole)) result=true;
+            if(this.groups.get(h).contains(id)) result=true;
         }
         return result;
     }
@@ -234,25 +375,49 @@ public class SAsimulator_worstCase{
         int factor = 0;                       // type of simulator
         int arrivals = 0;                     // arrivals distribution
         int WMAX = 0;                         // max laxity
+        int threads = Runtime.getRuntime().availableProcessors();   // number of combinations simulated concurrently
+        boolean generate = (args.length>0);   // clients generated in memory with the seed given as argument, instead of input files
+        long seed = generate ? Long.parseLong(args[0]) : 0;
         double[] alphabetaMax = null;
+        ArrayList<int[]> combinations = new ArrayList<int[]>();             // parameter combinations {N, factor, arrivals, WMAX} in grid order
+        ArrayList<Future<double[]>> results = new ArrayList<Future<double[]>>();  // alpha max and beta max of each combination
+        
+        // run all combinations
+        // each combination builds its own simulator, so they are independent and can be simulated concurrently
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (N=4000;N<=16000;N*=2){
+            for (factor=CONSTANT;factor<=LINEAR;factor++){
+                for(arrivals=UNIFORM;arrivals<=POISSON;arrivals++){
+                    for(WMAX=1024;WMAX<=16384;WMAX*=4){
+                        final int[] combination = {N,factor,arrivals,WMAX};
+                        combinations.add(combination);
+                        if(generate) results.add(pool.submit(() -> simCaller(combination[0],combination[1],combination[2],combination[3],seed)));
+                        else results.add(pool.submit(() -> simCaller(combination[0],combination[1],combination[2],combination[3])));
+                    }
+                }
+            }
+        }
+        pool.shutdown();
         
         try{
             File outputFile = new File("./results_alphabetamax.txt");
             PrintWriter output = new PrintWriter(outputFile);
-            // run all combinations
-            for (N=4000;N<=16000;N*=2){
-                for (factor=CONSTANT;factor<=LINEAR;factor++){
-                    for(arrivals=UNIFORM;arrivals<=POISSON;arrivals++){
-                        for(WMAX=1024;WMAX<=16384;WMAX*=4){
-                            alphabetaMax = simCaller(N,factor,arrivals,WMAX);
-                            output.println("N= "+N+" factor= "+factor+" arrivals= "+arrivals+" wMax= "+WMAX+" alphaMax= "+alphabetaMax[0]+" betaMax= "+alphabetaMax[1]);                         // output results
-                            System.out.println("N= "+N+" factor= "+factor+" arrivals= "+arrivals+" wMax= "+WMAX+" alphaMax= "+alphabetaMax[0]+" betaMax= "+alphabetaMax[1]);                         // output results
-                        }
-                    }
-                }
+            // output results in grid order, waiting for each combination to finish
+            for(int i=0; i<combinations.size(); i++){
+                N = combinations.get(i)[0];
+                factor = combinations.get(i)[1];
+                arrivals = combinations.get(i)[2];
+                WMAX = combinations.get(i)[3];
+                alphabetaMax = results.get(i).get();
+                output.println("N= "+N+" factor= "+factor+" arrivals= "+arrivals+" wMax= "+WMAX+" alphaMax= "+alphabetaMax[0]+" betaMax= "+alphabetaMax[1]);                         // output results
+                System.out.println("N= "+N+" factor= "+factor+" arrivals= "+arrivals+" wMax= "+WMAX+" alphaMax= "+alphabetaMax[0]+" betaMax= "+alphabetaMax[1]);                         // output results
+                output.flush();
             }
             output.close();
         }catch(IOException excp){System.out.println("File not found");}
+        catch(InterruptedException excp){System.out.println("Sweep interrupted");}
+        catch(ExecutionException excp){System.out.println("Simulation of a parameter combination failed: "+excp.getCause());}
+        finally{pool.shutdownNow();}
     }
         
     private static double[] simCaller(int N, int factor, int arrivals, int WMAX){
@@ -268,82 +433,222 @@ public class SAsimulator_worstCase{
             default:    // poisson
                 inputFileName.append("PoissonArrivals_");
         }
-        inputFileName.append(N+"clients_"+WMAX+"w.txt");
-        File inputFile = new File(inputFileName.toString());
+        inputFileName.append(N+"clients_"+WMAX+"w");
+        File inputFile = new File(inputFileName.toString()+".bin");        // converted by traceConverter, faster to read
+        if(!inputFile.exists()) inputFile = new File(inputFileName.toString()+".txt");
         SAsimulator_worstCase mySim = new SAsimulator_worstCase(factor, inputFile, N);  // create simulator
-        mySim.hole.id = 2*N;                                                            // put an inexistent id in the hole client
-        double alphaMax = 0;
-        double betaMax = 0;
+        return simulate(mySim, N, "N= "+N+" factor= "+factor+" arrivals= "+arrivals+" wMax= "+WMAX);
+    }
+    
+    // same as simCaller, but the clients are generated in memory with the given seed instead of read from a file
+    // (uniform laxity, as in the input files of the sweep)
+    private static double[] simCaller(int N, int factor, int arrivals, int WMAX, long seed){
+        workload source = new workload(N, WMAX, 1, arrivals, seed, workload.CHUNKS);
+        SAsimulator_worstCase mySim = new SAsimulator_worstCase(factor, source);   // create simulator
+        return simulate(mySim, N, "N= "+N+" factor= "+factor+" arrivals= "+arrivals+" wMax= "+WMAX);
+    }
+    
+    // simulates the clients of the simulator, returns alpha max and beta max
+    // the combination of parameters is only used to display the work counters and latencies
+    private static double[] simulate(SAsimulator_worstCase mySim, int N, String combination){
+        double[] alphabetaMax = new double[2];                      // alpha max and beta max
         boolean departures=false;
+        timeline events = new timeline(mySim.clientSet, 2*N);      // arrivals and departures bucketed by time slot
+        int myClient = 0;
+        int t = 0;
         // process events
-        for(int t=0; t<=2*N; t++){                                  // for each time slot
+        // time slots without events do not change the status, hence neither alpha max nor beta max, skip them
+        for(int k=0; k<events.numberOfSlots(); k++){                // for each time slot with events
+            t = events.slot(k);
             departures=false;
-            for(int j=0; j<mySim.clientSet.length; j++){            // for each client
-                if(mySim.clientSet[j].arrivaltime==t)               // this client arrived at this time
-                    mySim.add(mySim.clientSet[j]);                  // add it to the system
-                else{
-                    if (mySim.clientSet[j].departuretime==t){       // this client departed at this time
-                        if(!mySim.delete(mySim.clientSet[j])){      // remove it from the system
-                            System.out.println("Attempt to remove a non-existent client."+mySim.clientSet[j].toString()+".");
-                            System.exit(0);
-                        }
-                        departures=true;
+            for(int e=events.first(t); e<events.last(t); e++){      // for each event at this time
+                myClient = events.client(e);
+                if(events.isArrival(e))                             // this client arrived at this time
+                    mySim.add(myClient);                            // add it to the system
+                else{                                               // this client departed at this time
+                    if(!mySim.delete(myClient)){                    // remove it from the system
+                        System.out.println("Attempt to remove a non-existent client."+mySim.clientSet.toString(myClient)+".");
+                        System.exit(0);
                     }
+                    departures=true;
                 }
             }
-            if(departures){                                             // if there were departures
-                mySim.reallocate(t);                                    // reallocate if necessary
-            }
-                
-            mySim.currentReallocatedWeight = 0;                     // compute reallocated weight
-            for(int i=0; i<mySim.clientSet.length;i++){
-                if(t==mySim.clientSet[i].lastReallocTime) mySim.currentReallocatedWeight+=((double)1)/((double)mySim.clientSet[i].laxity);
+            mySim.endStep(t, departures, alphabetaMax);
+        }
+        if(profile.ENABLED) System.out.print(mySim.counters.report(combination));     // display work counters and latencies
+        return alphabetaMax;
+    }
+
+    // ends time step t: reallocates if there were departures and updates alpha max and beta max in alphabetaMax
+    private void endStep(int t, boolean departures, double[] alphabetaMax){
+        this.currentReallocatedWeight = 0;                          // reallocated weight is accumulated by reallocate
+        if(departures){                                             // if there were departures
+            try{
+                this.reallocate(t);                                 // reallocate if necessary
+            }catch(IllegalStateException excp){
+                System.out.println(excp.getMessage()+", simulator stopped.");
+                System.exit(0);
             }
+        }
 
-            if(mySim.numberOfStations()/Math.ceil(mySim.activeWeight)>alphaMax) // update alpha max
-                alphaMax=mySim.numberOfStations()/Math.ceil(mySim.activeWeight);
+        if(this.numberOfStations()/Math.ceil(this.activeWeight)>alphabetaMax[0])   // update alpha max
+            alphabetaMax[0]=this.numberOfStations()/Math.ceil(this.activeWeight);
 
-            if (mySim.currentReallocatedWeight>0){                                                  // if there were reallocations
-                if(((double)mySim.currentReallocatedWeight)/((double)mySim.departedWeight)>betaMax) // update beta max
-                    betaMax=((double)mySim.currentReallocatedWeight)/((double)mySim.departedWeight);
-                mySim.departedWeight=0;                                          // reset departed weight until new realloc event
-            }
-            
+        if (this.currentReallocatedWeight>0){                                       // if there were reallocations
+            if(this.currentReallocatedWeight/this.departedWeight>alphabetaMax[1])   // update beta max
+                alphabetaMax[1]=this.currentReallocatedWeight/this.departedWeight;
+            this.departedWeight=0;                                                  // reset departed weight until new realloc event
         }
-        double[] alphabetaMax = new double[2];
-        alphabetaMax[0] = alphaMax;                            // return alpha max
-        alphabetaMax[1] = betaMax;                             // return beta max
-        return alphabetaMax;
     }
 
     // reads the input file
-    private void readInput(File file, client[] clientSet){
+    private void readInput(File file, clients clientSet){
+        if(binaryTrace.isBinary(file)){                         // converted by traceConverter
+            this.readBinary(file, clientSet);
+            return;
+        }
+        if(file.getName().toLowerCase().endsWith(".xml")){      // produced by inputGen
+            this.readXML(file, clientSet);
+            return;
+        }
         try{
-            Scanner input = new Scanner(file);
+            traceReader input = new traceReader(file);
             input.nextLine();   //ignore 1st line
             input.nextLine();   //ignore 2nd line
+            idTable idLines = new idTable(clientSet.id.length);    // line where each id was read
+            int line = 0;
+            int errors = 0;
             for(int i=0;input.hasNext();i++){
-                clientSet[i] = new client();
+                line = input.line();
                 //input.next();   //ignore
-                clientSet[i].id = 1+Integer.parseInt(input.next()); // we need client ID's starting from 1
-                clientSet[i].arrivaltime = (int)Double.parseDouble(input.next());
-                clientSet[i].laxity = Integer.parseInt(input.next());
-                input.next();   //ignore
-                clientSet[i].departuretime = (int)Double.parseDouble(input.next());
+                clientSet.id[i] = 1+input.nextInt(); // we need client ID's starting from 1
+                clientSet.arrivaltime[i] = input.nextTruncated();
+                clientSet.laxity[i] = input.nextInt();
+                input.skip();   //ignore
+                clientSet.departuretime[i] = input.nextTruncated();
+                clientSet.size = i+1;
                 
-                // check input integrity
-                for(int j=0; j<i;j++){
-                    if (clientSet[j].id==clientSet[i].id){
-                        System.out.println("Input contains a duplicate client.");
-                        System.exit(0);
-                    }
-                }
-                if(clientSet[i].arrivaltime>clientSet[i].departuretime){
-                    System.out.println("Input contains a client with arrival time > departure time.");
-                    System.exit(0);
-                }
+                errors += this.check(clientSet, i, idLines, "Line", line);    // check input integrity
+            }
+            input.close();
+            if(errors>0){
+                System.out.println("Input contains "+errors+" errors, simulator stopped.");
+                System.exit(0);
+            }
+        }catch(IOException excp){System.out.println("File not found");}
+        catch(NumberFormatException excp){
+            System.out.println("Input contains a column that is not a number. "+excp.getMessage()+".");
+            System.exit(0);
+        }
+    }
+    
+    // reads an input file in binary format, see binaryTrace
+    private void readBinary(File file, clients clientSet){
+        try{
+            binaryTrace input = new binaryTrace(file);
+            if(!input.complete()){
+                System.out.println("Input is not a complete binary trace.");
+                System.exit(0);
+            }
+            if(input.size()>clientSet.id.length){
+                System.out.println("Input contains more than "+clientSet.id.length+" clients.");
+                System.exit(0);
+            }
+            idTable idRecords = new idTable((int)input.size());    // record where each id was read
+            int errors = 0;
+            for(int i=0; i<input.size(); i++){
+                clientSet.id[i] = 1+input.id(i);                   // we need client ID's starting from 1
+                clientSet.arrivaltime[i] = input.arrival(i);
+                clientSet.laxity[i] = input.laxity(i);
+                clientSet.departuretime[i] = input.departure(i);
+                clientSet.size = i+1;
+                errors += this.check(clientSet, i, idRecords, "Record", i+1);  // check input integrity
+            }
+            if(errors>0){
+                System.out.println("Input contains "+errors+" errors, simulator stopped.");
+                System.exit(0);
+            }
+        }catch(IOException excp){System.out.println("File not found");}
+    }
+    
+    // reads an input file in the XML format of inputGen, see xmlTrace
+    private void readXML(File file, clients clientSet){
+        try{
+            xmlTrace input = new xmlTrace(file);
+            idTable idLines = new idTable(clientSet.id.length);    // line where each id was read
+            int errors = 0;
+            for(int i=0; input.next(); i++){
+                clientSet.id[i] = 1+input.id();                     // we need client ID's starting from 1
+                clientSet.arrivaltime[i] = input.arrival();
+                clientSet.laxity[i] = input.laxity();               // w_size
+                clientSet.departuretime[i] = input.departure();
+                clientSet.size = i+1;
+                errors += this.check(clientSet, i, idLines, "Line", input.line());  // check input integrity
+            }
+            input.close();
+            if(errors>0){
+                System.out.println("Input contains "+errors+" errors, simulator stopped.");
+                System.exit(0);
             }
         }catch(IOException excp){System.out.println("File not found");}
+        catch(XMLStreamException excp){
+            System.out.println("Input is not a valid XML trace. "+excp.getMessage());
+            System.exit(0);
+        }
+        catch(NumberFormatException excp){
+            System.out.println("Input contains a field that is not a number. "+excp.getMessage()+".");
+            System.exit(0);
+        }
+    }
+    
+    // reads the clients of a workload as they are generated
+    private void readWorkload(workload source, clients clientSet){
+        idTable idClients = new idTable(source.size());        // position of each id read
+        int errors = 0;
+        int i = 0;
+        try{
+            for(int[] records=source.next(); records!=null; records=source.next()){
+                for(int r=0; r<records.length; r+=4, i++){
+                    clientSet.id[i] = 1+records[r];                 // we need client ID's starting from 1
+                    clientSet.arrivaltime[i] = records[r+1];
+                    clientSet.laxity[i] = records[r+2];
+                    clientSet.departuretime[i] = records[r+3];
+                    clientSet.size = i+1;
+                    errors += this.check(clientSet, i, idClients, "Client", i+1);  // check input integrity
+                }
+            }
+        }catch(InterruptedException excp){
+            System.out.println("Interrupted while waiting for the workload.");
+            System.exit(0);
+        }catch(RuntimeException excp){
+            System.out.println("Workload generation failed: "+excp);
+            System.exit(0);
+        }
+        if(errors>0){
+            System.out.println("Input contains "+errors+" errors, simulator stopped.");
+            System.exit(0);
+        }
+    }
+    
+    // checks the i-th client read, reporting every error with the line (or record) where the client was read
+    // positions has the line (or record) of each id read before, returns the number of errors found
+    private int check(clients clientSet, int i, idTable positions, String unit, int position){
+        int errors = 0;
+        int first = positions.get(clientSet.id[i]);
+        if(first>=0){
+            System.out.println(unit+" "+position+": duplicate client "+(clientSet.id[i]-1)+" (first at "+unit.toLowerCase()+" "+first+").");
+            errors++;
+        }
+        else positions.put(clientSet.id[i], position);
+        if(clientSet.arrivaltime[i]>clientSet.departuretime[i]){
+            System.out.println(unit+" "+position+": client "+(clientSet.id[i]-1)+" with arrival time "+clientSet.arrivaltime[i]+" > departure time "+clientSet.departuretime[i]+".");
+            errors++;
+        }
+        if(clientSet.laxity[i]<=0 || (clientSet.laxity[i]&(clientSet.laxity[i]-1))!=0){    // laxities are powers of 2
+            System.out.println(unit+" "+position+": client "+(clientSet.id[i]-1)+" with laxity "+clientSet.laxity[i]+" that is not a positive power of 2.");
+            errors++;
+        }
+        return errors;
     }
     
 }
@@ -363,15 +668,26 @@ public class SAsimulator_worstCase{
  public ArrayList<station> myGroup;
  public int wMax;
  public int wMin;
+ private clients clientSet;
+ private BitSet[] stationsWithHoles;
+ private BitSet[] topHolesBuckets;
+ private BitSet nonEmptyTopHolesBuckets;
+ private int clients;
+ private profile counters;
  *
  *  Methods:
- public void add(client myClient, client hole){
- public boolean delete(client myClient, client hole){
- public void reallocate(int time, client hole){
- public boolean invariant(client hole){
+ public void holesChanged(int level, int position, boolean hasHoles){
+ public void topHolesChanged(int position, int from, int to){
+ private long nextByTopHoles(long key){
+ private long previousByTopHoles(long key){
+ public void add(int myClient){
+ public boolean delete(int myClient){
+ public double reallocate(int time){
+ public boolean invariant(){
  public int numberOfStations(){
- public void print(client hole){
- public boolean contains(int id, client hole){
+ public int numberOfClients(){
+ public void print(){
+ public boolean contains(int id){
  *
  *   Remarks
  *   -------
@@ -385,138 +701,204 @@ class group{    // a group of stations implemented as a list of stations
     public ArrayList<station> myGroup;
     public int wMax;
     public int wMin;
+    private clients clientSet;              // clients of the simulator
+    private BitSet[] stationsWithHoles;     // for each level, positions in myGroup of the stations with holes at that level (level 0 is the top)
+    private BitSet[] topHolesBuckets;       // for each number of top holes, positions in myGroup of the stations with that number of top holes
+    private BitSet nonEmptyTopHolesBuckets; // numbers of top holes whose bucket is not empty
+    private int clients=0;                  // number of active clients of the group
+    private profile counters;               // work counters of the simulator (null if off)
     
     // constructor
-    group(int wMax, int wMin){
+    group(int wMax, int wMin, clients clientSet, profile counters){
         this.myGroup = new ArrayList<station>();
         this.wMax = wMax;
         this.wMin = wMin;
+        this.clientSet = clientSet;
+        this.counters = counters;
+        if(profile.ENABLED) this.counters.addClass(this.wMin, this.wMax);
+        this.stationsWithHoles = new BitSet[31-Integer.numberOfLeadingZeros(this.wMax/this.wMin)];
+        for(int level=0; level<this.stationsWithHoles.length; level++)
+            this.stationsWithHoles[level] = new BitSet();
+        this.topHolesBuckets = new BitSet[this.wMin+1];     // buckets are created when first used
+        this.nonEmptyTopHolesBuckets = new BitSet();
+    }
+    
+    // called by the station at the given position when it gets its first hole at a level, or loses its last one
+    public void holesChanged(int level, int position, boolean hasHoles){
+        this.stationsWithHoles[level].set(position, hasHoles);
+    }
+    
+    // called by the station at the given position when its number of top holes changes (from -1 if it was not in any bucket)
+    public void topHolesChanged(int position, int from, int to){
+        if(from>=0){
+            this.topHolesBuckets[from].clear(position);
+            if(this.topHolesBuckets[from].isEmpty()) this.nonEmptyTopHolesBuckets.clear(from);
+        }
+        if(this.topHolesBuckets[to]==null) this.topHolesBuckets[to] = new BitSet();
+        this.topHolesBuckets[to].set(position);
+        this.nonEmptyTopHolesBuckets.set(to);
+    }
+    
+    // stations sorted by number of top holes, and by position within the same number of top holes, are identified by the key
+    // (number of top holes << 32 | position)
+    // next station after the given key (first station if key is -1), Long.MAX_VALUE if none
+    private long nextByTopHoles(long key){
+        int topHoles = (key<0) ? 0 : (int)(key>>>32);
+        int position = (key<0 || this.topHolesBuckets[topHoles]==null) ? -1 : this.topHolesBuckets[topHoles].nextSetBit((int)key+1);
+        if(position<0){     // move to the next non-empty bucket
+            topHoles = this.nonEmptyTopHolesBuckets.nextSetBit((key<0) ? 0 : topHoles+1);
+            if(topHoles<0) return Long.MAX_VALUE;
+            position = this.topHolesBuckets[topHoles].nextSetBit(0);
+        }
+        return ((long)topHoles<<32) | position;
+    }
+    // previous station before the given key (last station if key is Long.MAX_VALUE), -1 if none
+    private long previousByTopHoles(long key){
+        int topHoles = (key==Long.MAX_VALUE) ? this.wMin : (int)(key>>>32);
+        int position = (key==Long.MAX_VALUE || this.topHolesBuckets[topHoles]==null) ? -1 : this.topHolesBuckets[topHoles].previousSetBit((int)key-1);
+        if(position<0){     // move to the previous non-empty bucket
+            topHoles = this.nonEmptyTopHolesBuckets.previousSetBit((key==Long.MAX_VALUE) ? this.wMin : topHoles-1);
+            if(topHoles<0) return -1;
+            position = this.topHolesBuckets[topHoles].length()-1;
+        }
+        return ((long)topHoles<<32) | position;
     }
     
     /////////////
     // ADD
     /////////////
-    public void add(client myClient, client hole){
+    public void add(int myClient){
+        addEvent event = (FlightRecorder.isInitialized()) ? new addEvent() : null;     // begun, null if the Flight Recorder is off
+        this.clients++;
         // find if the new client fits in one of the existing stations, checking level by level upwards
-        for(int levelLax = myClient.laxity ; levelLax >= this.wMin  ; levelLax=levelLax/2){
-            for(int i=0; i<this.myGroup.size(); i++){
-                if (this.myGroup.get(i).add(myClient,levelLax, hole)){
-                    return;
-                }
+        boolean added = false;
+        for(int levelLax = this.clientSet.laxity[myClient] ; levelLax >= this.wMin && !added ; levelLax=levelLax/2){
+            for(int i=0; i<this.myGroup.size() && !added; i++){
+                if(profile.ENABLED) this.counters.count(this.wMin, 31-Integer.numberOfLeadingZeros(levelLax/this.wMin), profile.PROBES, 1);
+                added = this.myGroup.get(i).add(myClient,levelLax);
             }
         }
-        // does not fit in any of the existing stations, create a new one with a hole in the root of each tree
-        station newStation = new station(this.wMax, this.wMin, hole);
-        // add the new client as a caterpillar at the root
-        newStation.add(myClient, this.wMin, hole);
-        this.myGroup.add(newStation);
+        if(!added){
+            // does not fit in any of the existing stations, create a new one with a hole in the root of each tree
+            station newStation = new station(this.wMax, this.wMin, this.clientSet, this.counters);
+            if(profile.ENABLED) this.counters.count(this.wMin, 0, profile.CREATIONS, 1);
+            // add the new client as a caterpillar at the root
+            newStation.add(myClient, this.wMin);
+            this.myGroup.add(newStation);
+            newStation.register(this, this.myGroup.size()-1);
+        }
+        if(event!=null) event.record(this.clientSet, myClient, this.clientSet.arrivaltime[myClient], this.wMin, this.wMax, this.myGroup.size());
     }
 
     /////////////
     // DELETE
     /////////////
-    public boolean delete(client myClient, client hole){
-        // try each station
-        for(int i=0; i<this.myGroup.size(); i++){
-            if (this.myGroup.get(i).delete(myClient,hole)) return true;
+    public boolean delete(int myClient){
+        deleteEvent event = (FlightRecorder.isInitialized()) ? new deleteEvent() : null;     // begun, null if the Flight Recorder is off
+        // go straight to the station of the client
+        if (this.clientSet.location[myClient]!=null && this.clientSet.location[myClient].delete(myClient)){
+            this.clients--;
+            if(event!=null) event.record(this.clientSet, myClient, this.clientSet.departuretime[myClient], this.wMin, this.wMax, this.myGroup.size());
+            return true;
         }
-        // did not find it in any of the stations
+        // the client is not in any of the stations
         return false;
     }
 
     /////////////
     // REALLOCATE
     /////////////
-    public void reallocate(int time, client hole){
-        boolean stopIter = false;
+    // returns the weight of the clients reallocated at this time
+    // throws IllegalStateException if a scheduled reallocation could not be performed, the group is then inconsistent
+    public double reallocate(int time){
+        reallocationEvent event = (FlightRecorder.isInitialized()) ? new reallocationEvent() : null;     // begun, null if the Flight Recorder is off
+        int stationsBefore = this.myGroup.size();
+        double reallocatedWeight = 0;
+        double movedWeight = 0;
         // consolidate holes within stations for free
         for(int i=0; i<this.myGroup.size(); i++)
-            this.myGroup.get(i).reallocateWithinStation(hole);
+            this.myGroup.get(i).reallocateWithinStation();
         // after the above consolidation, no station can have more than one hole per non-top level (but this could change now)
         // reallocate among stations level by level upwards (top level comes later)
-        for(int levelLax = this.wMax/2 ; levelLax > this.wMin  ; levelLax=levelLax/2){
-            // find pairs of stations with a hole
-            for(int i=0; i<this.myGroup.size()-1; i++){     // -1 because there must be pairs
-                if (this.myGroup.get(i).hasHole(levelLax, hole)){   // station i has hole, look for another one
-                    stopIter=false;
-                    for(int j=i+1; j<this.myGroup.size() && !stopIter; j++){
-                        if (this.myGroup.get(j).hasHole(levelLax, hole)){   // station j has hole, reallocate
-                            // direction of reallocation is arbitrary (2nd to 1st parameter)
-                            // because checking all the combinations upwards would be exponential
-                            if(!station.reallocate(this.myGroup.get(i),this.myGroup.get(j),levelLax,time,hole)){
-                                System.out.println("A scheduled reallocation at lower level was not performed, simulator stopped.");
-                                System.exit(0);
-                            }
-                            // the latter reallocation may leave 2 holes in station j
-                            // consolidate within station for free
-                            this.myGroup.get(j).reallocateWithinStation(hole);
-                            stopIter=true;  // stop inner iteration
-                        }
-                    }
-                }
+        for(int levelLax = this.wMax/2, level = this.stationsWithHoles.length-1 ; levelLax > this.wMin  ; levelLax=levelLax/2, level--){
+            // find pairs of stations with a hole, taking each station with a hole in order and the next one with a hole
+            for(int i=this.stationsWithHoles[level].nextSetBit(0); i>=0; i=this.stationsWithHoles[level].nextSetBit(i+1)){
+                // station i has hole, look for another one
+                int j = this.stationsWithHoles[level].nextSetBit(i+1);
+                if (j<0) break;     // there must be pairs
+                // station j has hole, reallocate
+                // direction of reallocation is arbitrary (2nd to 1st parameter)
+                // because checking all the combinations upwards would be exponential
+                movedWeight = station.reallocate(this.myGroup.get(i),this.myGroup.get(j),levelLax,time);
+                if(movedWeight<0)   // the simulator is left inconsistent, the callers stop it
+                    throw new IllegalStateException("A scheduled reallocation at lower level was not performed");
+                reallocatedWeight += movedWeight;
+                // the latter reallocation may leave 2 holes in station j
+                // consolidate within station for free
+                this.myGroup.get(j).reallocateWithinStation();
             }
         }
         // consolidate holes within stations for free
         for(int i=0; i<this.myGroup.size(); i++)
-            this.myGroup.get(i).reallocateWithinStation(hole);
+            this.myGroup.get(i).reallocateWithinStation();
         // reallocate among stations at top level
         // 1) sort them by top-holes
         // 2) fill the leftmost top-hole with the rightmost top-non-hole
-        // create an array with the number of topholes on each station
-        int[] topHolesCounter = new int[this.myGroup.size()];
-        for(int i=0; i<this.myGroup.size(); i++)
-            topHolesCounter[i] = this.myGroup.get(i).numberOfTopHoles(hole);
-        // find out the max number of top holes
-        int maxTopHoles=0;
-        for(int i=0; i<topHolesCounter.length; i++)
-            if (topHolesCounter[i]>maxTopHoles) maxTopHoles = topHolesCounter[i];
-        // create a new array with the indices of the top hole counter sorted by number of top holes
-        int[] sortedStations = new int[topHolesCounter.length];
-        for(int topHoles=0,j=0; topHoles<=maxTopHoles; topHoles++){
-            for(int i=0; i<topHolesCounter.length; i++){
-                if (topHolesCounter[i] == topHoles){
-                    sortedStations[j]=i;
-                    j++;
-                }
-            }
-        }
-        // using the indirect index created
+        // stations are kept sorted by number of top holes in buckets, and the pointers are keys of the buckets
+        // only the stations at the pointers change their number of top holes, the left one to a bucket before the left pointer
+        // and the right one to a bucket after the right pointer, so the order between the pointers stays the same as at the beginning
         // reallocate top holes moving from the rightmost non-empty station to the leftmost non-full station
-        int leftpointer = 0;
-        while(this.myGroup.get(sortedStations[leftpointer]).isTaken(hole) && leftpointer<sortedStations.length-1)
-            leftpointer++; // move right until there is a non-taken
-        int rightpointer = sortedStations.length-1;
-        while(this.myGroup.get(sortedStations[rightpointer]).isEmpty(hole) && rightpointer>0)
-            rightpointer--; // move left until there is a non-empty
+        long leftpointer = this.nextByTopHoles(-1);
+        while(this.myGroup.get((int)leftpointer).isTaken() && this.nextByTopHoles(leftpointer)!=Long.MAX_VALUE)
+            leftpointer = this.nextByTopHoles(leftpointer); // move right until there is a non-taken
+        long rightpointer = this.previousByTopHoles(Long.MAX_VALUE);
+        while(this.myGroup.get((int)rightpointer).isEmpty() && this.previousByTopHoles(rightpointer)>=0)
+            rightpointer = this.previousByTopHoles(rightpointer); // move left until there is a non-empty
         while(leftpointer<rightpointer){    // while the pointers do not cross there is something to reallocate
-            if (!station.reallocate(this.myGroup.get(sortedStations[leftpointer]),this.myGroup.get(sortedStations[rightpointer]),this.wMin,time,hole)){
-                System.out.println("A scheduled reallocation at top level was not performed, simulator stopped.");
-                System.exit(0);
-            }
+            movedWeight = station.reallocate(this.myGroup.get((int)leftpointer),this.myGroup.get((int)rightpointer),this.wMin,time);
+            if (movedWeight<0)      // the simulator is left inconsistent, the callers stop it
+                throw new IllegalStateException("A scheduled reallocation at top level was not performed");
+            reallocatedWeight += movedWeight;
             // update pointers
-            if ( this.myGroup.get(sortedStations[leftpointer]).isTaken(hole)) leftpointer++;
-            if ( this.myGroup.get(sortedStations[rightpointer]).isEmpty(hole)) rightpointer--;
+            if ( this.myGroup.get((int)leftpointer).isTaken()) leftpointer = this.nextByTopHoles(leftpointer);
+            if ( this.myGroup.get((int)rightpointer).isEmpty()) rightpointer = this.previousByTopHoles(rightpointer);
         }
-        // deactivate empty stations
-        for(int i=0; i<this.myGroup.size(); i++){
-            if(this.myGroup.get(i).isEmpty(hole))
+        // deactivate empty stations (backwards, so that removing one does not skip the next one)
+        boolean removed = false;
+        for(int i=this.myGroup.size()-1; i>=0; i--){
+            if(this.myGroup.get(i).isEmpty()){
                 this.myGroup.remove(i);
+                removed = true;
+                if(profile.ENABLED) this.counters.count(this.wMin, 0, profile.REMOVALS, 1);
+            }
+        }
+        // stations after a removed one changed position, register them again
+        if(removed){
+            for(int level=0; level<this.stationsWithHoles.length; level++)
+                this.stationsWithHoles[level].clear();
+            for(int topHoles=this.nonEmptyTopHolesBuckets.nextSetBit(0); topHoles>=0; topHoles=this.nonEmptyTopHolesBuckets.nextSetBit(topHoles+1))
+                this.topHolesBuckets[topHoles].clear();
+            this.nonEmptyTopHolesBuckets.clear();
+            for(int i=0; i<this.myGroup.size(); i++)
+                this.myGroup.get(i).register(this, i);
         }
         // check invariant:
-        assert invariant(hole): "Invariant violated after reallocation.";
+        assert invariant(): "Invariant violated after reallocation.";
+        if(event!=null) event.record(time, this.wMin, this.wMax, stationsBefore, this.myGroup.size(), reallocatedWeight);
+        return reallocatedWeight;
     }
     
     // invariant
     // 1) throughout stations, at most one hole per non-top level
     // 2) at most one station has holes in top level
     // 3) no station is empty
-    public boolean invariant(client hole){
+    public boolean invariant(){
         // 1) throughout stations, at most one hole per non-top level
         int holesCounter=0;
         for(int levelLax = this.wMax/2 ; levelLax > this.wMin  ; levelLax=levelLax/2){
             holesCounter=0;
             for(int i=0; i<this.myGroup.size(); i++){
-                holesCounter += this.myGroup.get(i).numberOfHoles(levelLax, hole);
+                holesCounter += this.myGroup.get(i).numberOfHoles(levelLax);
             }
             if(holesCounter>1){
                 System.out.println(holesCounter+" holes at level "+levelLax+" in class ["+this.wMin+","+this.wMax+").");
@@ -526,13 +908,13 @@ class group{    // a group of stations implemented as a list of stations
         // 2) at most one station has holes in top level
         int topHoleStationsCounter=0;
         for(int i=0; i<this.myGroup.size(); i++){
-            if(this.myGroup.get(i).hasHole(wMin, hole))
+            if(this.myGroup.get(i).hasHole(wMin))
                 topHoleStationsCounter++;
         }
         if(topHoleStationsCounter>1) return false;
         // 3) no station is empty
         for(int i=0; i<this.myGroup.size(); i++){
-            if(this.myGroup.get(i).isEmpty(hole))
+            if(this.myGroup.get(i).isEmpty())
                 return false;
         }
         return true;
@@ -543,19 +925,24 @@ class group{    // a group of stations implemented as a list of stations
         return myGroup.size();
     }
     
+    // number of active clients
+    public int numberOfClients(){
+        return this.clients;
+    }
+    
     // for debugging: prints all trees
-    public void print(client hole){
+    public void print(){
         System.out.println("Class ["+this.wMin+","+this.wMax+") with "+this.myGroup.size()+" stations.");
         for(int i=0;i<this.myGroup.size(); i++){
-            this.myGroup.get(i).print(hole);
+            this.myGroup.get(i).print();
         }
     }
     
     // for debugging: search for a client id
-    public boolean contains(int id, client hole){
+    public boolean contains(int id){
         boolean result=false;
         for(int h=0;h<this.myGroup.size();h++){
-            if(this.myGroup.get(h).contains(id,hole)) result=true;
+            if(this.myGroup.get(h).contains(id)) result=true;
         }
         return result;
     }
@@ -574,25 +961,40 @@ class group{    // a group of stations implemented as a list of stations
  *  Class: station
  *
  *  Data fields:
- private client[][] myStation;
+ final static int HOLE = -1;
+ final static int UNAVAILABLE = -2;
+ private int[] myStation;
  private int wMax;
  private int wMin;
+ private int treeSize;
+ private clients clientSet;
+ private long[][] holes;
+ private int[] holesCounter;
+ private group owner;
+ private int position;
+ private profile counters;
  *
  *  Methods:
- station(int wMax, int wMin, client hole){
- public boolean add(client myClient, int levelLax, client hole){
- public boolean delete(client myClient, client hole){
- public static boolean reallocate(station destination,station origin,int levelLax,int time,client hole){
- public void reallocateWithinStation(client hole){
- private int[] findHole(int levelLax, client hole){
- private int[] findSiblingOfHole(int levelLax, client hole){
- public int numberOfHoles(int levelLax, client hole){
- public boolean hasHole(int levelLax, client hole){
- public int numberOfTopHoles(client hole){
- public boolean isEmpty(client hole){
- public boolean isTaken(client hole){
- public void print(client hole){
- public boolean contains(int id, client hole){
+ station(int wMax, int wMin, clients clientSet, profile counters){
+ public void register(group owner, int position){
+ public int position(){
+ private int get(int tree, int node){
+ private void set(int tree, int node, int myClient){
+ public boolean add(int myClient, int levelLax){
+ public boolean delete(int myClient){
+ public static double reallocate(station destination,station origin,int levelLax,int time){
+ public void reallocateWithinStation(){
+ private int nextHole(int level, int bit){
+ private static double move(station destination,int i,int j,station origin,int k,int l,int levelLax,int time){
+ private int[] findHole(int levelLax){
+ private int[] findSiblingOfHole(int levelLax){
+ public int numberOfHoles(int levelLax){
+ public boolean hasHole(int levelLax){
+ public int numberOfTopHoles(){
+ public boolean isEmpty(){
+ public boolean isTaken(){
+ public void print(){
+ public boolean contains(int id){
  *
  *   Remarks
  *   -------
@@ -604,122 +1006,199 @@ class station{
     // implemented as wMin binary trees (arrays) each of size wMax/wMin (the length of the array)
     // using that the children of i is at 2i and 2i+1 and the parent at floor(i/2), do not use position 0
     // the reason for wMax/wMin is that in the last level the laxity is wMax/2. In the last level there are then wMax/(2wMin) nodes. In the whole tree there are wMax/wMin-1 nodes. And we need one more to ignore the first position.
+    // the trees are stored one after the other in a single array of ints, node j of tree i is at i*wMax/wMin+j
     // the definition of the tree nodes usage is the following:
-    // available : hole client
-    // taken (by a client) : client reference
-    // unavailable : null
+    // available : HOLE
+    // taken (by a client) : position of the client in clientSet
+    // unavailable : UNAVAILABLE
+    // the holes of each level are also kept in a bitmap and a counter, the bits of a level follow the order trees first,
+    // then nodes within each tree:
+    // node j of tree i at level L (2^L <= j < 2^(L+1), laxity level wMin*2^L) is bit i*2^L + j-2^L of holes[L]
+    // all the nodes must be written through set() to keep the bitmaps and counters up to date
+    
+    // tree nodes usage
+    final static int HOLE = -1;
+    final static int UNAVAILABLE = -2;
     
     // data fields
-    private client[][] myStation;
+    private int[] myStation;
     private int wMax;
     private int wMin;
+    private int treeSize;               // wMax/wMin, length of each tree including the unused position 0
+    private clients clientSet;          // clients of the simulator
+    private long[][] holes;             // bitmap of the holes of each level
+    private int[] holesCounter;         // number of holes of each level
+    private group owner;                // group notified when a level gets its first hole or loses its last one, and when the top holes change (null if none)
+    private int position;               // position of this station in the group
+    private profile counters;           // work counters of the simulator (null if off)
     
     // constructor
-    station(int wMax, int wMin, client hole){
+    station(int wMax, int wMin, clients clientSet, profile counters){
         this.wMax = wMax;
         this.wMin = wMin;
-        this.myStation = new client[this.wMin][this.wMax/this.wMin];    // rows are the trees, columns >0 are the nodes, ignore column 0
-        // put holes in the root of all trees (all the other nodes are unavailable (null) by default
-        for(int i=0; i<this.myStation.length; i++){
-            this.myStation[i][0]=null;      // not used
-            this.myStation[i][1]=hole;      // the root
-            for(int j=2; j<this.myStation[i].length; j++)
-                this.myStation[i][j]=null;  // descendants
+        this.treeSize = this.wMax/this.wMin;
+        this.clientSet = clientSet;
+        this.counters = counters;
+        this.myStation = new int[this.wMin*this.treeSize];     // trees one after the other, ignore position 0 of each tree
+        Arrays.fill(this.myStation, UNAVAILABLE);
+        this.holes = new long[31-Integer.numberOfLeadingZeros(this.treeSize)][];
+        for(int level=0; level<this.holes.length; level++)
+            this.holes[level] = new long[((this.wMin<<level)+63)/64];
+        this.holesCounter = new int[this.holes.length];
+        // put holes in the root of all trees (all the other nodes are unavailable)
+        for(int i=0; i<this.wMin; i++)
+            this.set(i,1,HOLE);             // the root
+    }
+    
+    // registers this station in the group at the given position, and notifies the levels that have holes
+    public void register(group owner, int position){
+        this.owner = owner;
+        this.position = position;
+        for(int level=0; level<this.holesCounter.length; level++)
+            this.owner.holesChanged(level, this.position, this.holesCounter[level]>0);
+        this.owner.topHolesChanged(this.position, -1, this.holesCounter[0]);
+    }
+    
+    // position of this station in the group
+    public int position(){
+        return this.position;
+    }
+    
+    // reads a node
+    private int get(int tree, int node){
+        return this.myStation[tree*this.treeSize+node];
+    }
+    
+    // writes a client (or HOLE or UNAVAILABLE) in a node, updating the holes bitmap and counter of its level
+    private void set(int tree, int node, int myClient){
+        if((this.myStation[tree*this.treeSize+node]==HOLE) != (myClient==HOLE)){  // the node becomes or stops being a hole
+            int level = 31-Integer.numberOfLeadingZeros(node);
+            int bit = (tree<<level) + node - (1<<level);
+            this.holes[level][bit>>>6] ^= 1L<<bit;
+            if(myClient==HOLE) this.holesCounter[level]++;
+            else this.holesCounter[level]--;
+            if(this.owner!=null && this.holesCounter[level]==((myClient==HOLE)?1:0))  // first hole or last hole of the level
+                this.owner.holesChanged(level, this.position, this.holesCounter[level]>0);
+            if(this.owner!=null && level==0)
+                this.owner.topHolesChanged(this.position, (myClient==HOLE) ? this.holesCounter[0]-1 : this.holesCounter[0]+1, this.holesCounter[0]);
         }
+        this.myStation[tree*this.treeSize+node] = myClient;
     }
     
     /////////////
     // ADD
     /////////////
-    // a client to an available position, store the reference in that position and mark as unavailable all its ancestors and descendants.
-    public boolean add(client myClient, int levelLax, client hole){
+    // a client to an available position, store the client in that position and mark as unavailable all its ancestors and descendants.
+    public boolean add(int myClient, int levelLax){
         // try to allocate myClient to this station at the given laxity level, return true if successful
-        for(int tree=0; tree<this.myStation.length; tree++){
-            //positions from levelLax
-            //if levelLax/this.wMin = 1 then position = 1
-            //if levelLax/this.wMin = 2 then positions = 2 and 3
-            //if levelLax/this.wMin = 4 then positions = 4,5,6 and 7
-            // ... in general:
-            for(int i=(levelLax/this.wMin); i<(2*levelLax/this.wMin); i++){ // for each position at the desired level
-                if(this.myStation[tree][i]==hole){                               // found an available position
-                    // ancestors are already null, because there cannot be a hole who is a descendant of another hole
-                    // assign at that position an appropriate caterpillar of length according to myClient.laxity
-                    while(i<myClient.laxity/this.wMin){ // if this is not the level that corresponds to myClient, go down
-                        this.myStation[tree][i] = null;
-                        this.myStation[tree][2*i+1] = hole;
-                        i=2*i;
-                    }
-                    this.myStation[tree][i] = myClient;
-                    // descendants are already null, because there cannot be a hole or a client who is a descendant of another hole
-                    return true;
-                }
-            }
+        //positions from levelLax
+        //if levelLax/this.wMin = 1 then position = 1
+        //if levelLax/this.wMin = 2 then positions = 2 and 3
+        //if levelLax/this.wMin = 4 then positions = 4,5,6 and 7
+        // ... in general positions levelLax/this.wMin to 2*levelLax/this.wMin-1, the first hole is the first available position
+        int[] retval = this.findHole(levelLax);
+        if(retval==null) return false;
+        int tree = retval[0];
+        int i = retval[1];
+        // ancestors are already unavailable, because there cannot be a hole who is a descendant of another hole
+        // assign at that position an appropriate caterpillar of length according to this.clientSet.laxity[myClient]
+        while(i<this.clientSet.laxity[myClient]/this.wMin){ // if this is not the level that corresponds to myClient, go down
+            this.set(tree,i,UNAVAILABLE);
+            this.set(tree,2*i+1,HOLE);
+            i=2*i;
         }
-        return false;
+        this.set(tree,i,myClient);
+        this.clientSet.location[myClient] = this;
+        this.clientSet.tree[myClient] = tree;
+        this.clientSet.node[myClient] = i;
+        // descendants are already unavailable, because there cannot be a hole or a client who is a descendant of another hole
+        return true;
     }
     
     /////////////
     // DELETE
     /////////////
     // and consolidate sibling holes up to the root.
-    public boolean delete(client myClient, client hole){
-        // attempt to delete, if not found, return false
-        for(int tree=0; tree<this.myStation.length; tree++){
-            for(int i=1; i<this.myStation[tree].length; i++){
-                if(this.myStation[tree][i]==myClient){          // my Client found
-                    this.myStation[tree][i]=hole;               // de-allocate myClient
-                    while(i>1){                            // consolidate holes up to the root
-                        int sibling=0;
-                        if((i&1)==0) sibling=i+1;  // i is even, sibling is to the right
-                        else sibling = i-1;        // i is odd, sibling is to the left
-                        if (this.myStation[tree][sibling]==hole){
-                            this.myStation[tree][i]=null;
-                            this.myStation[tree][sibling]=null;
-                            this.myStation[tree][i/2]=hole;
-                            i=i/2;
-                        }
-                        else{   // sibling is not hole => consolidation complete
-                            return true;
-                        }
-                    }// hole at root
-                    return true;
-                }
+    public boolean delete(int myClient){
+        // attempt to delete at the position of the client, if not there, return false
+        int tree = this.clientSet.tree[myClient];
+        int i = this.clientSet.node[myClient];
+        if(this.clientSet.location[myClient]!=this || this.get(tree,i)!=myClient) return false;
+        this.set(tree,i,HOLE);                      // de-allocate myClient
+        this.clientSet.location[myClient]=null;
+        while(i>1){                            // consolidate holes up to the root
+            int sibling=0;
+            if((i&1)==0) sibling=i+1;  // i is even, sibling is to the right
+            else sibling = i-1;        // i is odd, sibling is to the left
+            if (this.get(tree,sibling)==HOLE){
+                if(profile.ENABLED) this.counters.count(this.wMin, 31-Integer.numberOfLeadingZeros(i/2), profile.CONSOLIDATIONS, 1);
+                this.set(tree,i,UNAVAILABLE);
+                this.set(tree,sibling,UNAVAILABLE);
+                this.set(tree,i/2,HOLE);
+                i=i/2;
             }
-        }
-        return false;
+            else{   // sibling is not hole => consolidation complete
+                return true;
+            }
+        }// hole at root
+        return true;
     }
 
     /////////////
     // REALLOCATE
     /////////////
-    public static boolean reallocate(station destination,station origin,int levelLax,int time,client hole){
+    // returns the weight of the clients reallocated for the first time at this time, or -1 if the reallocation was not performed
+    public static double reallocate(station destination,station origin,int levelLax,int time){
+        migrationEvent event = (FlightRecorder.isInitialized()) ? new migrationEvent() : null;     // begun, null if the Flight Recorder is off
         // check input integrity
         assert (destination.wMin==origin.wMin && destination.wMax==origin.wMax) : "Origin and destination classes do not match.";
         assert (levelLax>=destination.wMin && levelLax<destination.wMax) : "Requested level of reallocation does not belong to this class.";
         // find the destination hole
-        int [] retval = destination.findHole(levelLax,hole);
+        int [] retval = destination.findHole(levelLax);
         if (retval==null){
             System.out.println("Destination hole not found");
-            return false;
+            return -1;
         }
         int i = retval[0];
         int j = retval[1];
         // find the origin sibling of hole
-        retval = origin.findSiblingOfHole(levelLax,hole);
+        retval = origin.findSiblingOfHole(levelLax);
         if (retval==null){
             System.out.println("Origin sibling of hole not found");
-            return false;
+            return -1;
         }
         int k = retval[0];
         int l = retval[1];
-        // reallocate origin node and all descendants (even nulls) j,2j,2j+1,4j,4j+1,4j+2,4j+3,8j,...
+        double movedWeight = move(destination,i,j,origin,k,l,levelLax,time);
+        if(event!=null) event.record(time, destination.wMin, destination.wMax, levelLax, (destination.owner!=null) ? destination.owner.numberOfStations() : 0, movedWeight);
+        return movedWeight;
+    }
+    
+    // moves the subtree at node l of tree k of origin to the hole at node j of tree i of destination, both at laxity level levelLax,
+    // and consolidates holes in the origin up to the root
+    // returns the weight of the clients reallocated for the first time at this time, unless time<0 (free move, not a reallocation)
+    private static double move(station destination,int i,int j,station origin,int k,int l,int levelLax,int time){
+        double reallocatedWeight = 0;
+        int node = 0;
+        clients clientSet = destination.clientSet;
+        if(profile.ENABLED) destination.counters.count(destination.wMin, 31-Integer.numberOfLeadingZeros(levelLax/destination.wMin),
+                                                       (destination==origin) ? profile.FREE_MOVES : profile.MOVES, 1);
+        // reallocate origin node and all descendants (even unavailable) j,2j,2j+1,4j,4j+1,4j+2,4j+3,8j,...
         for(int mult=1; mult*levelLax<destination.wMax; mult*=2){
             for(int offset=0; offset<mult; offset++){
-                destination.myStation[i][j*mult+offset]=origin.myStation[k][l*mult+offset];
-                if(mult==1) origin.myStation[k][l*mult+offset]=hole;
-                else origin.myStation[k][l*mult+offset]=null;
-                if(destination.myStation[i][j*mult+offset]!=null && destination.myStation[i][j*mult+offset]!=hole){
-                    destination.myStation[i][j*mult+offset].lastReallocTime=time;
+                node = origin.get(k,l*mult+offset);
+                destination.set(i,j*mult+offset,node);
+                if(mult==1) origin.set(k,l*mult+offset,HOLE);
+                else origin.set(k,l*mult+offset,UNAVAILABLE);
+                if(node>=0){                        // a client
+                    if(time>=0){
+                        if(clientSet.lastReallocTime[node]!=time)    // count each client once per time step
+                            reallocatedWeight += ((double)1)/((double)clientSet.laxity[node]);
+                        clientSet.lastReallocTime[node]=time;
+                    }
+                    clientSet.location[node]=destination;
+                    clientSet.tree[node]=i;
+                    clientSet.node[node]=j*mult+offset;
                 }
             }
         }
@@ -728,138 +1207,135 @@ class station{
             int sibling=0;
             if((l&1)==0) sibling=l+1;  // l is even, sibling is to the right
             else sibling = l-1;        // l is odd, sibling is to the left
-            if (origin.myStation[k][sibling]==hole){
-                origin.myStation[k][l]=null;
-                origin.myStation[k][sibling]=null;
-                origin.myStation[k][l/2]=hole;
+            if (origin.get(k,sibling)==HOLE){
+                if(profile.ENABLED) origin.counters.count(origin.wMin, 31-Integer.numberOfLeadingZeros(l/2), profile.CONSOLIDATIONS, 1);
+                origin.set(k,l,UNAVAILABLE);
+                origin.set(k,sibling,UNAVAILABLE);
+                origin.set(k,l/2,HOLE);
                 l=l/2;  // computes floor
             }
             else       // sibling is not hole => consolidation complete
-                return true;
+                return reallocatedWeight;
         }// hole at root
-        return true;
+        return reallocatedWeight;
     }
     
     /////////////////////////////
     // REALLOCATE WITHIN STATION
     /////////////////////////////
     // within station reallocations are free
-    // for simplicity, reset station moving all clients.
-    public void reallocateWithinStation(client hole){
-        //copy clients to a list
-        ArrayList<client> temp = new ArrayList<client>();
-        for(int i=0; i<this.myStation.length; i++){
-            for(int j=0; j<this.myStation[i].length; j++){
-                if(this.myStation[i][j]!=hole && this.myStation[i][j]!=null){
-                    temp.add(this.myStation[i][j]);
-                }
+    // consolidate holes level by level upwards, until there is at most one hole per non-top level
+    // while a level has two holes, the sibling of the second one is moved to the first one, so the second one is merged with
+    // its sibling into a hole of the level above. Nothing is moved if the station is already consolidated.
+    public void reallocateWithinStation(){
+        int first = 0;
+        int second = 0;
+        boolean moved = false;
+        for(int level=this.holesCounter.length-1, levelLax=this.wMax/2; level>0; level--, levelLax/=2){
+            while(this.holesCounter[level]>1){
+                moved = true;
+                // two holes at this level cannot be siblings, otherwise they would have been merged
+                first = this.nextHole(level,0);
+                second = this.nextHole(level,first+1);
+                move(this, first>>>level, (1<<level)+(first&((1<<level)-1)),
+                     this, second>>>level, ((1<<level)+(second&((1<<level)-1)))^1, levelLax, -1);
             }
         }
-        //reset station: put holes in the root of all trees and all the other nodes unavailable (null)
-        for(int i=0; i<this.myStation.length; i++){
-            this.myStation[i][0]=null;      // not used
-            this.myStation[i][1]=hole;      // the root
-            for(int j=2; j<this.myStation[i].length; j++)
-                this.myStation[i][j]=null;  // descendants
-        }
-        // add again from list
-        boolean stopIter=false;
-        for(int h=0;h<temp.size();h++){
-            stopIter=false;
-            for(int levelLax=temp.get(h).laxity;levelLax>=this.wMin && !stopIter;levelLax/=2){
-                if(this.add(temp.get(h),levelLax,hole)) stopIter=true;
+        if(profile.ENABLED && moved) this.counters.count(this.wMin, 0, profile.REBUILDS, 1);
+    }
+
+    // first hole of the given level at the given bit of its bitmap or after it, -1 if none
+    private int nextHole(int level, int bit){
+        long word = 0;
+        for(int w=bit>>>6; w<this.holes[level].length; w++){    // for each word of the bitmap of the level
+            word = this.holes[level][w];
+            if(w==bit>>>6) word &= -1L<<bit;                    // ignore the bits before the given one
+            if(word!=0){
+                if(profile.ENABLED) this.counters.count(this.wMin, level, profile.SCANS, w-(bit>>>6)+1);
+                return (w<<6) + Long.numberOfTrailingZeros(word);
             }
         }
+        if(profile.ENABLED) this.counters.count(this.wMin, level, profile.SCANS, this.holes[level].length-(bit>>>6));
+        return -1;
     }
 
-    // finds a hole at the given laxity level
-    private int[] findHole(int levelLax, client hole){
+    // finds a hole at the given laxity level, the first one in the order of trees and nodes
+    private int[] findHole(int levelLax){
         int[] retval = null;
-        for(int i=0;i<this.myStation.length;i++){    // for each tree in the station
-            for(int j=levelLax/this.wMin; j<2*levelLax/this.wMin; j++){   // for each node in the level of laxity levelLax
-                if(this.myStation[i][j]==hole){      // found hole
-                    retval = new int[2];
-                    retval[0]=i;
-                    retval[1]=j;
-                    return retval;
-                }
-            }
+        int level = 31-Integer.numberOfLeadingZeros(levelLax/this.wMin);
+        if(this.holesCounter[level]==0) return retval;
+        int bit = this.nextHole(level,0);
+        if(bit>=0){                                         // found hole
+            retval = new int[2];
+            retval[0]=bit>>>level;                          // tree
+            retval[1]=(1<<level) + (bit&((1<<level)-1));    // node
         }
         return retval;
     }
 
     //  finds the sibling of a hole at the given laxity level
-    private int[] findSiblingOfHole(int levelLax, client hole){
+    private int[] findSiblingOfHole(int levelLax){
         int[] retval = null;
         int sibling = 0;
         if(levelLax==this.wMin){     // find sibling tree
-            for(int i=0;i<this.myStation.length;i++){    // for each tree in the station
-                if(this.myStation[i][1]!=hole){      // found sibling tree
+            for(int w=0;w<this.holes[0].length;w++){        // for each word of the bitmap of the roots
+                long taken = ~this.holes[0][w];
+                if(w==this.holes[0].length-1 && (this.wMin&63)!=0) taken &= (1L<<(this.wMin&63))-1;  // ignore bits beyond the last tree
+                if(taken!=0){                               // found sibling tree
                     retval = new int[2];
-                    retval[0]=i;
+                    retval[0]=(w<<6) + Long.numberOfTrailingZeros(taken);
                     retval[1]=1;
                     return retval;
                 }
             }
         }
         else{                       // find sibling node
-            for(int i=0;i<this.myStation.length;i++){    // for each tree in the station
-                for(int j=levelLax/this.wMin; j<2*levelLax/this.wMin; j++){   // for each node in the level of laxity levelLax
-                    if(this.myStation[i][j]==hole){      // found hole
-                        // find sibling
-                        if((j&1)==0) sibling=j+1;  // j is even, sibling is to the right
-                        else sibling = j-1;        // j is odd, sibling is to the left
-                        if (this.myStation[i][sibling]==hole){  // sibling holes => error
-                            System.out.println("Unexpected sibling holes.");
-                            System.exit(0);
-                        }
-                        retval = new int[2];
-                        retval[0]=i;
-                        retval[1]=sibling;
-                        return retval;
-                    }
+            retval = this.findHole(levelLax);
+            if(retval!=null){                               // found hole
+                // find sibling
+                int j = retval[1];
+                if((j&1)==0) sibling=j+1;  // j is even, sibling is to the right
+                else sibling = j-1;        // j is odd, sibling is to the left
+                if (this.get(retval[0],sibling)==HOLE){    // sibling holes => error
+                    System.out.println("Unexpected sibling holes.");
+                    System.exit(0);
                 }
+                retval[1]=sibling;
             }
         }
         return retval;
     }
 
     // auxiliary computations
-    public int numberOfHoles(int levelLax, client hole){
-        int counter=0;
-        for(int i=0; i<this.myStation.length; i++){                        // for each tree
-            for(int j=levelLax/this.wMin; j<2*levelLax/this.wMin; j++){    // for each position at the corresponding level
-                if(this.myStation[i][j]==hole) counter++;
-            }
-        }
-        return counter;
+    public int numberOfHoles(int levelLax){
+        return this.holesCounter[31-Integer.numberOfLeadingZeros(levelLax/this.wMin)];
     }
-    public boolean hasHole(int levelLax, client hole){
-        return (this.numberOfHoles(levelLax,hole)>0);
+    public boolean hasHole(int levelLax){
+        return (this.numberOfHoles(levelLax)>0);
     }
-    public int numberOfTopHoles(client hole){
-        return this.numberOfHoles(this.wMin,hole);
+    public int numberOfTopHoles(){
+        return this.holesCounter[0];
     }
-    public boolean isEmpty(client hole){
-        return (this.numberOfTopHoles(hole)==this.wMin);
+    public boolean isEmpty(){
+        return (this.numberOfTopHoles()==this.wMin);
     }
-    public boolean isTaken(client hole){
-        return (this.numberOfTopHoles(hole)==0);
+    public boolean isTaken(){
+        return (this.numberOfTopHoles()==0);
     }
     
     // for debugging: prints the trees
-    public void print(client hole){
-        for(int i=0;i<this.myStation.length; i++){          // rows are the trees
-            for(int j=1;j<this.myStation[i].length; j++){   // columns are tree nodes
-                if(this.myStation[i][j]!=null){
-                    if(this.myStation[i][j]!=hole){         // an assigned client
+    public void print(){
+        for(int i=0;i<this.wMin; i++){                      // rows are the trees
+            for(int j=1;j<this.treeSize; j++){              // columns are tree nodes
+                if(this.get(i,j)!=UNAVAILABLE){
+                    if(this.get(i,j)!=HOLE){                // an assigned client
                         System.out.print("1");
-//                        System.out.print(" "+this.myStation[i][j].id+" ");
+//                        System.out.print(" "+this.clientSet.id[this.get(i,j)]+" ");
                     }
                     else                                    // a hole
                         System.out.print("0");
                 }
-                else                                        // a null
+                else                                        // unavailable
                     System.out.print(".");
             }
             System.out.println();
@@ -867,13 +1343,11 @@ class station{
     }
     
     // for debugging: search for a client id
-    public boolean contains(int id, client hole){
+    public boolean contains(int id){
         boolean result=false;
         for(int h=0;h<this.myStation.length;h++){
-            for(int k=0;k<this.myStation[h].length;k++){
-                if(this.myStation[h][k]!=hole && this.myStation[h][k]!=null){
-                    if(this.myStation[h][k].id==3) result=true;
-                }
+            if(this.myStation[h]>=0){
+                if(this.clientSet.id[this.myStation[h]]==3) result=true;
             }
         }
         return result;
@@ -890,17 +1364,27 @@ class station{
  *  Proceedings of 14th International Symposium on Experimental Algorithms (SEA 2015)
  *
  *  Description: Worst case simulator for CPR protocol
- *  Class: client
+ *  Class: clients
  *
  *  Data fields:
- public int id=0;
- public int arrivaltime=0;
- public int departuretime=0;
- public int laxity=0;
- public int lastReallocTime=-1;      // there is a t=0
+ public int size=0;                  // number of positions in use (clients read, or allocated in streaming mode)
+ public int[] id;
+ public int[] arrivaltime;
+ public int[] departuretime;
+ public int[] laxity;
+ public int[] lastReallocTime;       // there is a t=0
+ public station[] location;          // station where the client is allocated (null if none)
+ public int[] tree;                  // tree of the station where the client is allocated
+ public int[] node;                  // node of the tree where the client is allocated
+ private int[] freeList;             // released positions, to be allocated again
+ private int freeCount=0;
  *
  *  Methods:
- public String toString(){
+ clients(int N){
+ public int allocate(){
+ public void release(int myClient){
+ public String toString(int myClient){
+ private void grow(){
  *
  *   Remarks
  *   -------
@@ -908,19 +1392,1205 @@ class station{
  *************************************************************************/
 
 
-class client{
+class clients{
+    // all fields of all clients, one array per field, a client is its position in the arrays
     
     // data fields
-    public int id=0;
-    public int arrivaltime=0;
-    public int departuretime=0;
-    public int laxity=0;
-    public int lastReallocTime=-1;      // there is a t=0
+    public int size=0;                  // number of positions in use (clients read, or allocated in streaming mode)
+    public int[] id;
+    public int[] arrivaltime;
+    public int[] departuretime;
+    public int[] laxity;
+    public int[] lastReallocTime;       // there is a t=0
+    public station[] location;          // station where the client is allocated (null if none)
+    public int[] tree;                  // tree of the station where the client is allocated
+    public int[] node;                  // node of the tree where the client is allocated
+    private int[] freeList;             // released positions, to be allocated again
+    private int freeCount=0;
+    
+    // constructor
+    clients(int N){
+        this.id = new int[N];
+        this.arrivaltime = new int[N];
+        this.departuretime = new int[N];
+        this.laxity = new int[N];
+        this.lastReallocTime = new int[N];
+        Arrays.fill(this.lastReallocTime, -1);
+        this.location = new station[N];
+        this.tree = new int[N];
+        this.node = new int[N];
+        this.freeList = new int[N];
+    }
+    
+    // streaming mode: returns a position for a new client, reusing a released one if any
+    public int allocate(){
+        if(this.freeCount>0){
+            this.freeCount--;
+            return this.freeList[this.freeCount];
+        }
+        if(this.size==this.id.length) this.grow();
+        this.size++;
+        return this.size-1;
+    }
+    
+    // streaming mode: releases the position of a departed client, that must not be in any station
+    public void release(int myClient){
+        this.location[myClient] = null;
+        this.lastReallocTime[myClient] = -1;
+        this.freeList[this.freeCount] = myClient;
+        this.freeCount++;
+    }
     
     // for debugging: prints a client
-    public String toString(){
-        return ("id = "+id+", arrival time = "+arrivaltime+", departure time = "+departuretime+", laxity = "+laxity+" last reallocation time = "+lastReallocTime);
+    public String toString(int myClient){
+        return ("id = "+id[myClient]+", arrival time = "+arrivaltime[myClient]+", departure time = "+departuretime[myClient]+", laxity = "+laxity[myClient]+" last reallocation time = "+lastReallocTime[myClient]);
+    }
+    
+    // doubles the capacity of all the arrays
+    private void grow(){
+        int capacity = Math.max(16, 2*this.id.length);
+        this.id = Arrays.copyOf(this.id, capacity);
+        this.arrivaltime = Arrays.copyOf(this.arrivaltime, capacity);
+        this.departuretime = Arrays.copyOf(this.departuretime, capacity);
+        this.laxity = Arrays.copyOf(this.laxity, capacity);
+        this.lastReallocTime = Arrays.copyOf(this.lastReallocTime, capacity);
+        Arrays.fill(this.lastReallocTime, this.size, capacity, -1);
+        this.location = Arrays.copyOf(this.location, capacity);
+        this.tree = Arrays.copyOf(this.tree, capacity);
+        this.node = Arrays.copyOf(this.node, capacity);
+        this.freeList = Arrays.copyOf(this.freeList, capacity);
+    }
+}
+
+/*************************************************************************
+ *
+ *  Paper:
+ *  "Station Assignment with Reallocation"
+ *  Austin Halper, Miguel A. Mosteiro, Yulia Rossikova, and Prudence W. H. Wong
+ *  Proceedings of 14th International Symposium on Experimental Algorithms (SEA 2015)
+ *
+ *  Description: Worst case simulator for CPR protocol
+ *  Class: idTable
+ *
+ *  Data fields:
+ private int[] keys;
+ private int[] values;
+ private int size;
+ *
+ *  Methods:
+ idTable(int expected){
+ public int get(int id){
+ public void put(int id, int value){
+ public int remove(int id){
+ public int size(){
+ private int slot(int id){
+ private void grow(){
+ *
+ *   Remarks
+ *   -------
+ *  Open addressing with linear probing. Removal shifts back the following entries of the
+ *  probe sequence, so there are no tombstones and lookups stay short after many removals.
+ *
+ *************************************************************************/
+
+
+class idTable{
+    // map from client ids to non-negative ints (positions in clientSet, lines of the input)
+    
+    // data fields
+    private int[] keys;
+    private int[] values;       // -1 = empty slot
+    private int size=0;         // number of ids in the table
+    
+    // constructor, for the given expected number of ids
+    idTable(int expected){
+        int capacity = 16;
+        while(capacity<2*expected) capacity*=2;
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(this.values, -1);
+    }
+    
+    // value of the given id, -1 if the id is not in the table
+    public int get(int id){
+        int i = this.slot(id);
+        while(this.values[i]>=0){
+            if(this.keys[i]==id) return this.values[i];
+            i = (i+1)&(this.keys.length-1);
+        }
+        return -1;
+    }
+    
+    // sets the value of the given id
+    public void put(int id, int value){
+        int i = this.slot(id);
+        while(this.values[i]>=0 && this.keys[i]!=id) i = (i+1)&(this.keys.length-1);
+        if(this.values[i]<0) this.size++;
+        this.keys[i] = id;
+        this.values[i] = value;
+        if(2*this.size>this.keys.length) this.grow();
+    }
+    
+    // removes the given id, returns its value or -1 if the id was not in the table
+    public int remove(int id){
+        int mask = this.keys.length-1;
+        int i = this.slot(id);
+        while(this.values[i]>=0 && this.keys[i]!=id) i = (i+1)&mask;
+        int value = this.values[i];
+        if(value<0) return -1;
+        this.size--;
+        // shift back the entries that would not be found with a hole at i
+        int j = i;
+        int home = 0;
+        while(true){
+            this.values[i] = -1;
+            do{
+                j = (j+1)&mask;
+                if(this.values[j]<0) return value;
+                home = this.slot(this.keys[j]);
+            }while(((j-home)&mask) < ((j-i)&mask));     // j can stay, its slot is between the hole and j
+            this.keys[i] = this.keys[j];
+            this.values[i] = this.values[j];
+            i = j;
+        }
+    }
+    
+    // number of ids in the table
+    public int size(){
+        return this.size;
+    }
+    
+    // first slot of the probe sequence of the given id
+    private int slot(int id){
+        int h = id*0x9E3779B9;
+        return (h^(h>>>16))&(this.keys.length-1);
+    }
+    
+    // doubles the capacity of the table
+    private void grow(){
+        int[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        this.keys = new int[2*oldKeys.length];
+        this.values = new int[2*oldKeys.length];
+        Arrays.fill(this.values, -1);
+        this.size = 0;
+        for(int i=0; i<oldKeys.length; i++)
+            if(oldValues[i]>=0) this.put(oldKeys[i], oldValues[i]);
+    }
+}
+
+/*************************************************************************
+ *
+ *  Paper:
+ *  "Station Assignment with Reallocation"
+ *  Austin Halper, Miguel A. Mosteiro, Yulia Rossikova, and Prudence W. H. Wong
+ *  Proceedings of 14th International Symposium on Experimental Algorithms (SEA 2015)
+ *
+ *  Description: Worst case simulator for CPR protocol
+ *  Class: timeline
+ *
+ *  Data fields:
+ private int[] first;
+ private int[] events;
+ private int[] slots;
+ private int numberOfSlots;
+ *
+ *  Methods:
+ timeline(clients clientSet, int horizon){
+ public int first(int t){
+ public int last(int t){
+ public int client(int e){
+ public boolean isArrival(int e){
+ public int numberOfSlots(){
+ public int slot(int k){
+ *
+ *   Remarks
+ *   -------
+ *  Events of a time slot are kept in the order of the clients in clientSet, as in the
+ *  original scan of clientSet at each time slot, so that results do not change.
+ *
+ *************************************************************************/
+
+
+class timeline{
+    // arrival and departure events bucketed by time slot (counting sort on time)
+    // the events of time slot t are events[first[t]] ... events[first[t+1]-1]
+    // an event is the index j of the client in clientSet if it is an arrival, and ~j if it is a departure
+    // a client with arrival time = departure time only arrives (as in the original scan)
+    // events out of [0,horizon] are ignored
+    
+    // data fields
+    private int[] first;
+    private int[] events;
+    private int[] slots;            // non-empty time slots in increasing order
+    private int numberOfSlots;
+    
+    // constructor
+    timeline(clients clientSet, int horizon){
+        this.first = new int[horizon+2];
+        // count events per time slot
+        for(int j=0; j<clientSet.size; j++){
+            if(clientSet.arrivaltime[j]>=0 && clientSet.arrivaltime[j]<=horizon)
+                this.first[clientSet.arrivaltime[j]+1]++;
+            if(clientSet.departuretime[j]!=clientSet.arrivaltime[j] && clientSet.departuretime[j]>=0 && clientSet.departuretime[j]<=horizon)
+                this.first[clientSet.departuretime[j]+1]++;
+        }
+        // prefix sums give the first event of each time slot, and the non-empty time slots
+        this.slots = new int[horizon+1];
+        this.numberOfSlots = 0;
+        for(int t=0; t<=horizon; t++){
+            if(this.first[t+1]>0){
+                this.slots[this.numberOfSlots] = t;
+                this.numberOfSlots++;
+            }
+            this.first[t+1] += this.first[t];
+        }
+        // place the events, clients are visited in order so each time slot keeps the order of clientSet
+        this.events = new int[this.first[horizon+1]];
+        int[] next = Arrays.copyOf(this.first, horizon+1);
+        for(int j=0; j<clientSet.size; j++){
+            if(clientSet.arrivaltime[j]>=0 && clientSet.arrivaltime[j]<=horizon){
+                this.events[next[clientSet.arrivaltime[j]]] = j;
+                next[clientSet.arrivaltime[j]]++;
+            }
+            if(clientSet.departuretime[j]!=clientSet.arrivaltime[j] && clientSet.departuretime[j]>=0 && clientSet.departuretime[j]<=horizon){
+                this.events[next[clientSet.departuretime[j]]] = ~j;
+                next[clientSet.departuretime[j]]++;
+            }
+        }
+    }
+    
+    // first event of time slot t
+    public int first(int t){
+        return this.first[t];
+    }
+    
+    // last event of time slot t (exclusive)
+    public int last(int t){
+        return this.first[t+1];
+    }
+    
+    // index in clientSet of the client of event e
+    public int client(int e){
+        return (this.events[e]>=0) ? this.events[e] : ~this.events[e];
+    }
+    
+    // true if event e is an arrival, false if it is a departure
+    public boolean isArrival(int e){
+        return (this.events[e]>=0);
+    }
+    
+    // number of time slots with at least one event
+    public int numberOfSlots(){
+        return this.numberOfSlots;
+    }
+    
+    // k-th time slot with at least one event
+    public int slot(int k){
+        return this.slots[k];
     }
 }
 
+
+/*************************************************************************
+ *
+ *  Paper:
+ *  "Station Assignment with Reallocation"
+ *  Austin Halper, Miguel A. Mosteiro, Yulia Rossikova, and Prudence W. H. Wong
+ *  Proceedings of 14th International Symposium on Experimental Algorithms (SEA 2015)
+ *
+ *  Description: Worst case simulator for CPR protocol
+ *  Class: traceReader
+ *
+ *  Data fields:
+ private FileChannel channel;
+ private MappedByteBuffer buffer;
+ private long base;
+ private long fileSize;
+ private int line;
+ *
+ *  Methods:
+ traceReader(File file) throws IOException{
+ public void nextLine(){
+ public boolean hasNext(){
+ public void skip(){
+ public int nextInt(){
+ public int nextTruncated(){
+ public int line(){
+ public void close() throws IOException{
+ private void map(long position) throws IOException{
+ private void ensure(){
+ private void skipWhitespace(){
+ private NumberFormatException malformed(int start){
+ *
+ *   Remarks
+ *   -------
+ *  The file is mapped in windows of at most WINDOW bytes. A window is remapped from the
+ *  current position when fewer than MARGIN bytes are left, so a token is never split
+ *  between two windows (tokens of the trace are much shorter than MARGIN).
+ *
+ *************************************************************************/
+
+
+class traceReader{
+    // reads the whitespace-separated columns of a trace file straight from the bytes of the mapped file
+    // the columns are parsed as numbers without creating Strings
+    
+    final static int WINDOW = 1<<30;    // bytes mapped at a time
+    final static int MARGIN = 1<<12;    // bytes left in a window before remapping
+    
+    // data fields
+    private FileChannel channel;
+    private MappedByteBuffer buffer;    // current window of the file
+    private long base;                  // position in the file of the first byte of the window
+    private long fileSize;
+    private int line=1;                 // line of the file at the current position
+    
+    // constructor
+    traceReader(File file) throws IOException{
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.fileSize = this.channel.size();
+        this.map(0);
+    }
+    
+    // skips the rest of the current line
+    public void nextLine(){
+        this.ensure();
+        while(this.buffer.hasRemaining()){
+            if(this.buffer.get()=='\n'){
+                this.line++;
+                return;
+            }
+            this.ensure();
+        }
+    }
+    
+    // true if there is another column in the file
+    public boolean hasNext(){
+        this.skipWhitespace();
+        return this.buffer.hasRemaining();
+    }
+    
+    // skips the next column without parsing it
+    public void skip(){
+        this.skipWhitespace();
+        while(this.buffer.hasRemaining() && this.buffer.get(this.buffer.position())>' ')
+            this.buffer.get();
+    }
+    
+    // parses the next column as an int (as Integer.parseInt)
+    public int nextInt(){
+        this.skipWhitespace();
+        int start = this.buffer.position();
+        boolean negative = false;
+        long value = 0;
+        byte b = 0;
+        if(this.buffer.hasRemaining() && (this.buffer.get(start)=='-' || this.buffer.get(start)=='+')){
+            negative = (this.buffer.get()=='-');
+        }
+        int digits = 0;
+        while(this.buffer.hasRemaining() && (b=this.buffer.get(this.buffer.position()))>' '){
+            if(b<'0' || b>'9' || value>Integer.MAX_VALUE) throw this.malformed(start);
+            value = 10*value+(b-'0');
+            digits++;
+            this.buffer.get();
+        }
+        if(negative) value = -value;
+        if(digits==0 || value>Integer.MAX_VALUE || value<Integer.MIN_VALUE) throw this.malformed(start);
+        return (int)value;
+    }
+    
+    // parses the next column as a decimal number truncated to an int (as (int)Double.parseDouble)
+    public int nextTruncated(){
+        this.skipWhitespace();
+        int start = this.buffer.position();
+        boolean negative = false;
+        double value = 0;
+        byte b = 0;
+        if(this.buffer.hasRemaining() && (this.buffer.get(start)=='-' || this.buffer.get(start)=='+')){
+            negative = (this.buffer.get()=='-');
+        }
+        int digits = 0;
+        // integer part
+        while(this.buffer.hasRemaining() && (b=this.buffer.get(this.buffer.position()))>='0' && b<='9'){
+            value = 10*value+(b-'0');
+            digits++;
+            this.buffer.get();
+        }
+        // fractional part, it does not change the truncated value
+        if(this.buffer.hasRemaining() && this.buffer.get(this.buffer.position())=='.'){
+            this.buffer.get();
+            while(this.buffer.hasRemaining() && (b=this.buffer.get(this.buffer.position()))>='0' && b<='9'){
+                digits++;
+                this.buffer.get();
+            }
+        }
+        if(digits==0) throw this.malformed(start);
+        if(this.buffer.hasRemaining() && this.buffer.get(this.buffer.position())>' '){
+            // exponent or anything else, let Double.parseDouble decide
+            while(this.buffer.hasRemaining() && this.buffer.get(this.buffer.position())>' ') this.buffer.get();
+            byte[] token = new byte[this.buffer.position()-start];
+            this.buffer.get(start, token);
+            try{
+                return (int)Double.parseDouble(new String(token, StandardCharsets.US_ASCII));
+            }catch(NumberFormatException excp){throw this.malformed(start);}
+        }
+        return (int)(negative ? -value : value);
+    }
+    
+    // line of the file at the current position (starting from 1)
+    public int line(){
+        return this.line;
+    }
+    
+    // closes the file
+    public void close() throws IOException{
+        this.channel.close();
+    }
+    
+    // maps a window of the file starting at the given position
+    private void map(long position) throws IOException{
+        this.base = position;
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, this.fileSize-position));
+    }
+    
+    // remaps the window from the current position if it is close to its end and the file is not
+    private void ensure(){
+        if(this.buffer.remaining()<MARGIN && this.base+this.buffer.limit()<this.fileSize){
+            try{
+                this.map(this.base+this.buffer.position());
+            }catch(IOException excp){throw new UncheckedIOException(excp);}
+        }
+    }
+    
+    // skips spaces, tabs and line ends, counting lines
+    private void skipWhitespace(){
+        byte b = 0;
+        this.ensure();
+        while(this.buffer.hasRemaining() && (b=this.buffer.get(this.buffer.position()))<=' '){
+            if(b=='\n') this.line++;
+            this.buffer.get();
+            this.ensure();
+        }
+    }
+    
+    // error for a column that is not a number
+    private NumberFormatException malformed(int start){
+        int end = this.buffer.position();
+        while(end<this.buffer.limit() && this.buffer.get(end)>' ') end++;
+        byte[] token = new byte[end-start];
+        this.buffer.get(start, token);
+        return new NumberFormatException("For input string: \""+new String(token, StandardCharsets.US_ASCII)+"\" at line "+this.line);
+    }
+}
+
+/*************************************************************************
+ *
+ *  Paper:
+ *  "Station Assignment with Reallocation"
+ *  Austin Halper, Miguel A. Mosteiro, Yulia Rossikova, and Prudence W. H. Wong
+ *  Proceedings of 14th International Symposium on Experimental Algorithms (SEA 2015)
+ *
+ *  Description: Worst case simulator for CPR protocol
+ *  Class: binaryTrace
+ *
+ *  Data fields:
+ private IntBuffer records;
+ private long size;
+ private boolean complete;
+ *
+ *  Methods:
+ binaryTrace(File file) throws IOException{
+ public static boolean isBinary(File file){
+ public boolean complete(){
+ public long size(){
+ public int id(int i){
+ public int arrival(int i){
+ public int laxity(int i){
+ public int departure(int i){
+ *
+ *   Remarks
+ *   -------
+ *  The format is written by traceConverter: a header {magic, version, number of clients}
+ *  followed by one record {id, arrival, laxity, departure} per client, all little-endian.
+ *  Fields are read straight from the mapped file, nothing is copied or parsed.
+ *
+ *************************************************************************/
+
+
+class binaryTrace{
+    // reader of a trace file in binary format
+
+    final static int MAGIC = 0x42544153;       // "SATB" in little-endian
+    final static int VERSION = 1;
+    final static int HEADER = 16;               // bytes of the header
+    final static int RECORD = 16;               // bytes of a record
+
+    // data fields
+    private IntBuffer records;                  // ints of the records, 4 per client
+    private long size;                          // number of clients in the header
+    private boolean complete;                   // the file has all the records of the header and they can be mapped
+
+    // constructor
+    binaryTrace(File file) throws IOException{
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        while(header.hasRemaining() && channel.read(header)>=0);
+        this.size = (header.position()==HEADER) ? header.getLong(8) : -1;
+        this.complete = (this.size>=0 && this.size<=(Integer.MAX_VALUE-HEADER)/RECORD && fileSize>=HEADER+RECORD*this.size);
+        if(this.complete){
+            this.records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER, RECORD*this.size).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+        channel.close();                        // the mapping stays valid
+    }
+
+    // true if the file starts with the magic number and version of the binary format
+    public static boolean isBinary(File file){
+        ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        try{
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            while(header.hasRemaining() && channel.read(header)>=0);
+            channel.close();
+        }catch(IOException excp){return false;}
+        return (header.position()==8 && header.getInt(0)==MAGIC && header.getInt(4)==VERSION);
+    }
+
+    // true if the file has all the records announced in the header (and they fit in a mapping)
+    public boolean complete(){
+        return this.complete;
+    }
+
+    // number of clients
+    public long size(){
+        return this.size;
+    }
+
+    // fields of the i-th client
+    public int id(int i){
+        return this.records.get(4*i);
+    }
+
+    public int arrival(int i){
+        return this.records.get(4*i+1);
+    }
+
+    public int laxity(int i){
+        return this.records.get(4*i+2);
+    }
+
+    public int departure(int i){
+        return this.records.get(4*i+3);
+    }
+}
+
+/*************************************************************************
+ *
+ *  Paper:
+ *  "Station Assignment with Reallocation"
+ *  Austin Halper, Miguel A. Mosteiro, Yulia Rossikova, and Prudence W. H. Wong
+ *  Proceedings of 14th International Symposium on Experimental Algorithms (SEA 2015)
+ *
+ *  Description: Worst case simulator for CPR protocol
+ *  Class: xmlTrace
+ *
+ *  Data fields:
+ private InputStream stream;
+ private XMLStreamReader reader;
+ private int id;
+ private int arrival;
+ private int laxity;
+ private int departure;
+ private int line;
+ *
+ *  Methods:
+ xmlTrace(File file) throws IOException, XMLStreamException{
+ public boolean next() throws XMLStreamException{
+ public int id(){
+ public int arrival(){
+ public int laxity(){
+ public int departure(){
+ public int line(){
+ public void close() throws IOException, XMLStreamException{
+ *
+ *   Remarks
+ *   -------
+ *  The file is parsed as a stream of events, only the current task is kept in memory.
+ *  The laxity is w_size, the size rounded down to a power of 2, as the simulator needs.
+ *
+ *************************************************************************/
+
+
+class xmlTrace{
+    // reader of the <task> records of a trace file in the XML format of inputGen
+
+    // data fields
+    private InputStream stream;
+    private XMLStreamReader reader;
+    private int id;                     // fields of the current task
+    private int arrival;
+    private int laxity;
+    private int departure;
+    private int line;                   // line where the current task starts
+
+    // constructor
+    xmlTrace(File file) throws IOException, XMLStreamException{
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);                        // no DTD
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);    // no external entities
+        this.stream = new BufferedInputStream(new FileInputStream(file), 1<<16);
+        this.reader = factory.createXMLStreamReader(this.stream);
+    }
+
+    // reads the next task, returns false if there are no more tasks
+    public boolean next() throws XMLStreamException{
+        int fields = 0;                 // bit mask of the fields read: id, t_arrive, w_size, t_leave
+        String element = null;
+        // find the start of the next task
+        do{
+            if(!this.reader.hasNext()) return false;
+        }while(this.reader.next()!=XMLStreamConstants.START_ELEMENT || !this.reader.getLocalName().equals("task"));
+        this.line = this.reader.getLocation().getLineNumber();
+        // read its fields up to the end of the task
+        while(this.reader.nextTag()==XMLStreamConstants.START_ELEMENT){
+            element = this.reader.getLocalName();
+            switch(element){
+                case "id":
+                    this.id = Integer.parseInt(this.reader.getElementText().trim());
+                    fields |= 1;
+                    break;
+                case "t_arrive":
+                    this.arrival = (int)Double.parseDouble(this.reader.getElementText().trim());
+                    fields |= 2;
+                    break;
+                case "w_size":
+                    this.laxity = Integer.parseInt(this.reader.getElementText().trim());
+                    fields |= 4;
+                    break;
+                case "t_leave":
+                    this.departure = (int)Double.parseDouble(this.reader.getElementText().trim());
+                    fields |= 8;
+                    break;
+                default:                // size, the laxity before rounding
+                    this.reader.getElementText();
+            }
+        }
+        if(fields!=15) throw new XMLStreamException("Task at line "+this.line+" does not have all of id, t_arrive, w_size, t_leave.");
+        return true;
+    }
+
+    // fields of the current task
+    public int id(){
+        return this.id;
+    }
+
+    public int arrival(){
+        return this.arrival;
+    }
+
+    public int laxity(){
+        return this.laxity;
+    }
+
+    public int departure(){
+        return this.departure;
+    }
+
+    // line where the current task starts
+    public int line(){
+        return this.line;
+    }
+
+    // closes the file
+    public void close() throws IOException, XMLStreamException{
+        this.reader.close();
+        this.stream.close();
+    }
+}
+
+/*************************************************************************
+ *
+ *  Paper:
+ *  "Station Assignment with Reallocation"
+ *  Austin Halper, Miguel A. Mosteiro, Yulia Rossikova, and Prudence W. H. Wong
+ *  Proceedings of 14th International Symposium on Experimental Algorithms (SEA 2015)
+ *
+ *  Description: Worst case simulator for CPR protocol
+ *  Class: workload
+ *
+ *  Data fields:
+ private int n;
+ private int laxRange;
+ private int laxDist;
+ private int arrivalDist;
+ private long[] arrivalSeeds;
+ private long[] clientSeeds;
+ private ArrayBlockingQueue<int[]> queue;
+ private volatile RuntimeException failure;
+ *
+ *  Methods:
+ workload(int n, int laxRange, int laxDist, int arrivalDist, long seed, int chunks){
+ public int size(){
+ public int[] next() throws InterruptedException{
+ private void produce(){
+ private int[] chunk(int firstId, int lastId, int arrival, SplittableRandom arrivalRand, SplittableRandom rand){
+ private int smallBiased(SplittableRandom rand){
+ private static int poisson(double mean, SplittableRandom random){
+ *
+ *   Remarks
+ *   -------
+ *  The clients are the same as in the file written by inputGenWC with the same parameters,
+ *  seed and number of chunks, except that the laxities of the biased distributions are rounded down
+ *  to powers of 2 as the simulator needs (as w_size in inputGen). The chunks are generated in order by a producer thread and
+ *  handed to the simulator through a bounded queue, so at most QUEUE chunks wait in memory.
+ *
+ *************************************************************************/
+
+
+class workload{
+    // in-memory source of clients from the distributions of inputGenWC
+    
+    final static int QUEUE = 4;             // chunks generated ahead of the simulator
+    final static int CHUNKS = 64;           // default number of chunks (as inputGenWC)
+    
+    // data fields
+    private int n;                          // number of clients
+    private int laxRange;
+    private int laxDist;                    // 1=uniform, 2=small-biased, 3=large-biased
+    private int arrivalDist;                // 1=uniform, 2=batched, 3=Poisson
+    private long[] arrivalSeeds;            // seeds of the streams of each chunk
+    private long[] clientSeeds;
+    private ArrayBlockingQueue<int[]> queue;
+    private volatile RuntimeException failure=null;     // error of the producer, if any
+    
+    // constructor, starts generating the clients
+    workload(int n, int laxRange, int laxDist, int arrivalDist, long seed, int chunks){
+        this.n = n;
+        this.laxRange = laxRange;
+        this.laxDist = laxDist;
+        this.arrivalDist = arrivalDist;
+        chunks = Math.max(1, Math.min(chunks, n));
+        // seeds of the streams of each chunk, derived in order from the seed (as inputGenWC)
+        SplittableRandom root = new SplittableRandom(seed);
+        this.arrivalSeeds = new long[chunks];
+        this.clientSeeds = new long[chunks];
+        for(int k=0; k<chunks; k++){
+            this.arrivalSeeds[k] = root.nextLong();
+            this.clientSeeds[k] = root.nextLong();
+        }
+        this.queue = new ArrayBlockingQueue<int[]>(QUEUE);
+        Thread producer = new Thread(this::produce, "workload");
+        producer.setDaemon(true);
+        producer.start();
+    }
+    
+    // number of clients
+    public int size(){
+        return this.n;
+    }
+    
+    // next chunk of clients {id, arrival, laxity, departure, id, ...}, null if there are no more
+    // waits for the producer if the chunk is not ready
+    public int[] next() throws InterruptedException{
+        int[] records = this.queue.take();
+        if(this.failure!=null) throw this.failure;
+        return (records.length>0) ? records : null;
+    }
+    
+    // generates the chunks in order and puts them in the queue, followed by an empty chunk
+    private void produce(){
+        int chunks = this.arrivalSeeds.length;
+        int arrival = 0;
+        int[] records = null;
+        try{
+            try{
+                for(int k=0; k<chunks; k++){
+                    records = this.chunk((int)((long)k*this.n/chunks), (int)((long)(k+1)*this.n/chunks), arrival,
+                                         new SplittableRandom(this.arrivalSeeds[k]), new SplittableRandom(this.clientSeeds[k]));
+                    if(records.length>0) arrival = records[records.length-3];     // Poisson arrivals go on from the last one
+                    this.queue.put(records);
+                }
+            }catch(RuntimeException excp){
+                this.failure = excp;
+            }
+            this.queue.put(new int[0]);
+        }catch(InterruptedException excp){}     // nobody is waiting for the clients
+    }
+    
+    // generates the clients with ids from firstId to lastId-1
+    // arrival is the last arrival before the chunk (Poisson arrivals only)
+    private int[] chunk(int firstId, int lastId, int arrival, SplittableRandom arrivalRand, SplittableRandom rand){
+        int laxity=0;
+        int departure=0;
+        int[] records = new int[4*(lastId-firstId)];
+        for(int id=firstId;id<lastId;id++){
+            // compute a client
+            switch(this.arrivalDist){
+                case 1: // uniform distribution
+                    arrival = arrivalRand.nextInt(2*this.n);
+                    break;
+                case 2: // 3 batches of n/3 clients arriving at t=1, t=n/2, and t=n
+                    if(id<this.n/3) arrival = 1;
+                    else{
+                        if (id<2*this.n/3) arrival = this.n/2;
+                        else arrival = this.n;
+                    }
+                    break;
+                case 3: // Poisson distribution with rate 0.7
+                    arrival = arrival+poisson(0.7, arrivalRand);
+                    break;
+            }
+            departure = rand.nextInt(2*this.n-arrival)+arrival;
+            switch(this.laxDist){
+                case 1:
+                    if(this.laxRange==1024)
+                        laxity = 1<<(rand.nextInt(7)+4); // uniform distribution
+                    else if(this.laxRange==4096)
+                        laxity = 1<<(rand.nextInt(9)+4); // uniform distribution
+                    else if(this.laxRange==16384)
+                        laxity = 1<<(rand.nextInt(11)+4); // uniform distribution
+                    else
+                        laxity = this.smallBiased(rand); // other ranges are drawn as small-biased, as in inputGenWC
+                    break;
+                case 2:
+                    laxity = this.smallBiased(rand);
+                    break;
+                case 3:
+                    if(rand.nextDouble()>.3) // with probability .7 draw a laxity in the upper half of the range
+                        laxity = rand.nextInt(this.laxRange/2)+this.laxRange/2+1;
+                    else // with probability .3 draw a laxity in the lower half of the range
+                        laxity = rand.nextInt(this.laxRange/2)+1;
+                    break;
+            }
+            laxity = 1<<(31-Integer.numberOfLeadingZeros(laxity));  // rounded down to a power of 2 (w_size of inputGen)
+            records[4*(id-firstId)] = id;
+            records[4*(id-firstId)+1] = arrival;
+            records[4*(id-firstId)+2] = laxity;
+            records[4*(id-firstId)+3] = departure;
+        }
+        return records;
+    }
+    
+    // laxity of the small-biased distribution
+    private int smallBiased(SplittableRandom rand){
+        if(rand.nextDouble()>.3) // with probability .7 draw a laxity in the lower half of the range
+            return rand.nextInt(this.laxRange/2)+1;
+        else // with probability .3 draw a laxity in the upper half of the range
+            return rand.nextInt(this.laxRange/2)+this.laxRange/2+1;
+    }
+    
+    // poisson arrivals generator
+    private static int poisson(double mean, SplittableRandom random){
+        int r = 0;
+        double a = random.nextDouble();
+        double p = Math.exp(-mean);
+        
+        while (a > p) {
+            r++;
+            a = a - p;
+            p = p * mean / r;
+        }
+        return r;
+    }
+}
+
+
+/*************************************************************************
+ *
+ *  Paper:
+ *  "Station Assignment with Reallocation"
+ *  Austin Halper, Miguel A. Mosteiro, Yulia Rossikova, and Prudence W. H. Wong
+ *  Proceedings of 14th International Symposium on Experimental Algorithms (SEA 2015)
+ *
+ *  Description: Worst case simulator for CPR protocol
+ *  Class: profile
+ *
+ *  Data fields:
+ final static boolean ENABLED;
+ private long[][][] counts;
+ private int[] wMax;
+ private long[][] histograms;
+ private long[] total;
+ private long[] max;
+ *
+ *  Methods:
+ public void addClass(int wMin, int wMax){
+ public void count(int wMin, int level, int counter, long n){
+ public void time(int operation, long nanos){
+ public String report(String title){
+ private static long percentile(long[] histogram, long count, double fraction){
+ *
+ *   Remarks
+ *   -------
+ *  Instrumentation is off unless the JVM is started with -Dprofile=true. Every call is guarded by
+ *  if(profile.ENABLED), a static final field, so when it is off the JIT compiler removes the calls
+ *  and no profile is created. To compile the instrumentation out, set ENABLED to false.
+ *  Counters are kept per class (identified by wMin) and per level of the trees (0 is the top).
+ *  Latencies are kept in histograms with power of 2 buckets, so the percentiles are upper bounds.
+ *
+ *************************************************************************/
+
+
+class profile{
+    // work counters and latency histograms of a simulator
+    
+    final static boolean ENABLED = Boolean.getBoolean("profile");
+    
+    // counters
+    final static int PROBES = 0;            // stations tried by group.add
+    final static int SCANS = 1;             // bitmap words (64 nodes each) read looking for a hole
+    final static int MOVES = 2;             // subtrees moved between stations
+    final static int FREE_MOVES = 3;        // subtrees moved within a station
+    final static int CONSOLIDATIONS = 4;    // pairs of sibling holes merged, at the level of the merged hole
+    final static int REBUILDS = 5;          // reallocateWithinStation calls that moved some subtree
+    final static int CREATIONS = 6;         // stations created (level 0)
+    final static int REMOVALS = 7;          // stations removed (level 0)
+    final static String[] COUNTERS = {"probes", "scans", "moves", "free_moves", "consolidations", "rebuilds", "creations", "removals"};
+    // operations timed
+    final static int ADD = 0;
+    final static int DELETE = 1;
+    final static int REALLOCATE = 2;
+    final static String[] OPERATIONS = {"add", "delete", "reallocate"};
+    final static int BUCKETS = 64;          // bucket b holds the latencies in [2^(b-1), 2^b) ns
+    
+    // data fields
+    private long[][][] counts = new long[31][][];                           // counts[e][level][counter] of the class with wMin=2^e, null if not seen
+    private int[] wMax = new int[31];                                       // wMax of the class with wMin=2^e
+    private long[][] histograms = new long[OPERATIONS.length][BUCKETS];     // latencies of each operation
+    private long[] total = new long[OPERATIONS.length];                     // sum of the latencies of each operation
+    private long[] max = new long[OPERATIONS.length];                       // largest latency of each operation
+    
+    // called when a group of the class is created
+    public void addClass(int wMin, int wMax){
+        int e = Integer.numberOfTrailingZeros(wMin);
+        if(this.counts[e]!=null) return;
+        this.counts[e] = new long[31-Integer.numberOfLeadingZeros(wMax/wMin)][COUNTERS.length];
+        this.wMax[e] = wMax;
+    }
+    
+    // adds n to a counter of a level of the class of wMin
+    public void count(int wMin, int level, int counter, long n){
+        this.counts[Integer.numberOfTrailingZeros(wMin)][level][counter] += n;
+    }
+    
+    // records the latency of an operation
+    public void time(int operation, long nanos){
+        this.histograms[operation][64-Long.numberOfLeadingZeros(nanos)]++;
+        this.total[operation] += nanos;
+        if(nanos>this.max[operation]) this.max[operation] = nanos;
+    }
+    
+    // counters of the levels with some work, and latencies of the operations
+    public String report(String title){
+        StringBuilder text = new StringBuilder("profile of "+title+"\n");
+        boolean work = false;
+        for(int e=0; e<this.counts.length; e++){
+            if(this.counts[e]==null) continue;
+            for(int level=0; level<this.counts[e].length; level++){
+                work = false;
+                for(int c=0; c<COUNTERS.length; c++) work |= (this.counts[e][level][c]>0);
+                if(!work) continue;
+                text.append("class ["+(1<<e)+","+this.wMax[e]+") level "+level+":");
+                for(int c=0; c<COUNTERS.length; c++) text.append(" "+COUNTERS[c]+"= "+this.counts[e][level][c]);
+                text.append("\n");
+            }
+        }
+        long count = 0;
+        for(int op=0; op<OPERATIONS.length; op++){
+            count = 0;
+            for(int b=0; b<BUCKETS; b++) count += this.histograms[op][b];
+            if(count==0) continue;
+            text.append(OPERATIONS[op]+": count= "+count+" mean_ns= "+(this.total[op]/count)
+                        +" p50_ns< "+percentile(this.histograms[op], count, 0.5)
+                        +" p90_ns< "+percentile(this.histograms[op], count, 0.9)
+                        +" p99_ns< "+percentile(this.histograms[op], count, 0.99)
+                        +" max_ns= "+this.max[op]+"\n");
+        }
+        return text.toString();
+    }
+    
+    // upper bound of the bucket of the given fraction of the latencies
+    private static long percentile(long[] histogram, long count, double fraction){
+        long seen = 0;
+        for(int b=0; b<BUCKETS; b++){
+            seen += histogram[b];
+            if(seen>=fraction*count) return (b<63) ? 1L<<b : Long.MAX_VALUE;
+        }
+        return Long.MAX_VALUE;
+    }
+}
+
+
+/*************************************************************************
+ *
+ *  Paper:
+ *  "Station Assignment with Reallocation"
+ *  Austin Halper, Miguel A. Mosteiro, Yulia Rossikova, and Prudence W. H. Wong
+ *  Proceedings of 14th International Symposium on Experimental Algorithms (SEA 2015)
+ *
+ *  Description: Worst case simulator for CPR protocol
+ *  Class: clientEvent, addEvent, deleteEvent, reallocationEvent, migrationEvent
+ *
+ *  Data fields:
+ clientEvent: int timeSlot, int clientId, int laxity, int wMin, int wMax, int stations, double weight
+ reallocationEvent: int timeSlot, int wMin, int wMax, int stationsBefore, int stations, double movedWeight
+ migrationEvent: int timeSlot, int wMin, int wMax, int levelLax, boolean topLevel, int stations, double movedWeight
+ *
+ *  Methods:
+ clientEvent(), reallocationEvent(), migrationEvent(): begin the event
+ clientEvent: void record(clients clientSet, int myClient, int timeSlot, int wMin, int wMax, int stations){
+ reallocationEvent: void record(int timeSlot, int wMin, int wMax, int stationsBefore, int stations, double movedWeight){
+ migrationEvent: void record(int timeSlot, int wMin, int wMax, int levelLax, int stations, double movedWeight){
+ *
+ *   Remarks
+ *   -------
+ *  JDK Flight Recorder events, recorded with e.g. java -XX:StartFlightRecording=filename=sa.jfr SAsimulator
+ *  (or a recording started later with jcmd) and shown in JDK Mission Control under "Station Assignment".
+ *  Each operation creates its event, which begins it, and calls record at the end, which fills and commits it
+ *  only if the event is recorded. The events are not even created while the Flight Recorder is not initialized,
+ *  which also avoids the cost of initializing the event classes.
+ *
+ *************************************************************************/
+
+
+@Category({"Station Assignment", "Clients"})
+@StackTrace(false)
+abstract class clientEvent extends Event{
+    // arrival or departure of a client
+    
+    @Label("Time Slot")
+    int timeSlot;
+    @Label("Client Id")
+    int clientId;
+    @Label("Laxity")
+    int laxity;
+    @Label("Class Min")
+    int wMin;
+    @Label("Class Max")
+    int wMax;
+    @Label("Stations")
+    @Description("Stations of the class after the operation")
+    int stations;
+    @Label("Weight")
+    double weight;
+    
+    // constructor, begins the event
+    clientEvent(){
+        this.begin();
+    }
+    
+    // fills and commits the event, if it is recorded
+    void record(clients clientSet, int myClient, int timeSlot, int wMin, int wMax, int stations){
+        this.end();
+        if(!this.shouldCommit()) return;
+        this.timeSlot = timeSlot;
+        this.clientId = clientSet.id[myClient]-1;       // ids in the input start from 0
+        this.laxity = clientSet.laxity[myClient];
+        this.wMin = wMin;
+        this.wMax = wMax;
+        this.stations = stations;
+        this.weight = ((double)1)/((double)clientSet.laxity[myClient]);
+        this.commit();
+    }
+}
+
+@Name("stationassignment.ClientAdd")
+@Label("Client Add")
+@Description("A client added to a station of its class")
+class addEvent extends clientEvent{
+}
+
+@Name("stationassignment.ClientDelete")
+@Label("Client Delete")
+@Description("A client deleted from its station")
+class deleteEvent extends clientEvent{
+}
+
+@Name("stationassignment.ClassReallocation")
+@Label("Class Reallocation")
+@Description("Reallocation of the clients of a class at a time slot with departures")
+@Category({"Station Assignment", "Reallocation"})
+@StackTrace(false)
+class reallocationEvent extends Event{
+    
+    @Label("Time Slot")
+    int timeSlot;
+    @Label("Class Min")
+    int wMin;
+    @Label("Class Max")
+    int wMax;
+    @Label("Stations Before")
+    int stationsBefore;
+    @Label("Stations")
+    @Description("Stations of the class after the reallocation")
+    int stations;
+    @Label("Moved Weight")
+    @Description("Weight of the clients reallocated for the first time at this time slot")
+    double movedWeight;
+    
+    // constructor, begins the event
+    reallocationEvent(){
+        this.begin();
+    }
+    
+    // fills and commits the event, if it is recorded
+    void record(int timeSlot, int wMin, int wMax, int stationsBefore, int stations, double movedWeight){
+        this.end();
+        if(!this.shouldCommit()) return;
+        this.timeSlot = timeSlot;
+        this.wMin = wMin;
+        this.wMax = wMax;
+        this.stationsBefore = stationsBefore;
+        this.stations = stations;
+        this.movedWeight = movedWeight;
+        this.commit();
+    }
+}
+
+@Name("stationassignment.Migration")
+@Label("Migration")
+@Description("A subtree moved from a station to another one of its class")
+@Category({"Station Assignment", "Reallocation"})
+@StackTrace(false)
+class migrationEvent extends Event{
+    
+    @Label("Time Slot")
+    int timeSlot;
+    @Label("Class Min")
+    int wMin;
+    @Label("Class Max")
+    int wMax;
+    @Label("Level Laxity")
+    int levelLax;
+    @Label("Top Level")
+    @Description("The subtree is a whole tree (laxity level wMin), otherwise it is at a lower level")
+    boolean topLevel;
+    @Label("Stations")
+    @Description("Stations of the class")
+    int stations;
+    @Label("Moved Weight")
+    @Description("Weight of the clients reallocated for the first time at this time slot")
+    double movedWeight;
+    
+    // constructor, begins the event
+    migrationEvent(){
+        this.begin();
+    }
+    
+    // fills and commits the event, if it is recorded
+    void record(int timeSlot, int wMin, int wMax, int levelLax, int stations, double movedWeight){
+        this.end();
+        if(!this.shouldCommit()) return;
+        this.timeSlot = timeSlot;
+        this.wMin = wMin;
+        this.wMax = wMax;
+        this.levelLax = levelLax;
+        this.topLevel = (levelLax==wMin);
+        this.stations = stations;
+        this.movedWeight = movedWeight;
+        this.commit();
+    }
+}
+
+
 ////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -1,4 +1,3 @@
-@@ -0,0 +1,201 @@
 
 /*************************************************************************
  *
@@ -13,8 +12,13 @@
  *  Input: (stdio) 
  number of clients
  range of laxities
+ *  (arguments, optional) seed of the random generator, and number of chunks (default 64)
+ *  (argument, optional) -events to output the arrival and departure events sorted by time instead
  *
  *  Output: file in TXT format as follows. 
+ it id  Arrive  weight    1/weight     Departure (one line per client, in id order)
+ *  or with -events, file in TXT format with the events sorted by time (then id), as read by SAsimulator in streaming mode
+ time  id  weight  event (1=arrival, 0=departure)
  *
  *  Visible data fields: none
  *
@@ -23,24 +27,35 @@
  *
  *   Remarks
  *   -------
- *
- *
- *************************************************************************/
+ *  The ids are split in chunks of consecutive ids, generated in parallel. Each chunk draws
+ *  from its own SplittableRandom streams, whose seeds are derived in order from the seed,
+ *  so the output is the same (byte by byte) for a given seed and number of chunks whatever
+ *  the number of threads. Poisson arrivals are cumulative, so the arrivals of each chunk are
+ *  drawn from a separate stream that is replayed first to find where the chunk starts.
+ *  With -events, each chunk is sorted by time and the chunks are merged. If the events do not
+ *  fit in memory, the sorted chunks are written to temporary files first (external merge sort).
+ * *************************************************************************/
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 public class inputGenWC{
+
+    final static int CHUNKS = 64;              // default number of chunks
+
 	public static void main(String[] args) throws IOException{
         // init
-        int arrival=0;
-        int laxity=0;
-
-        int departure=0;
         int n=0;
         int laxRange=0;
         int laxDist=0;
         int arrivalDist=0;
+        boolean events = Arrays.asList(args).contains("-events");  // output events sorted by time instead of clients
+        args = Arrays.stream(args).filter(arg -> !arg.equals("-events")).toArray(String[]::new);
+        long seed = (args.length>0) ? Long.parseLong(args[0]) : new SplittableRandom().nextLong();
+        int chunks = (args.length>1) ? Integer.parseInt(args[1]) : CHUNKS;
         Scanner input = new Scanner(System.in);
-        Random rand = new Random();
         StringBuilder outputFileName = new StringBuilder();
         //input
         // input number of clients
@@ -82,38 +97,117 @@ public class inputGenWC{
                 outputFileName.append("PoissonArrivals");
                 break;
         }
-        outputFileName.append("_" + n + "clients_" + laxRange +"w.txt");
+        outputFileName.append("_" + n + "clients_" + laxRange +"w" + (events ? "_events" : "") + ".txt");
         File file = new File(outputFileName.toString());
         if (file.exists()){
             System.out.println("File already exists");
             System.exit(0);
         }
-        PrintWriter output = new PrintWriter(file);
-		output.print("========================print out input==========================\n");
-		output.print("it id  Arrive  weight    1/weight     Departure\n");
- 
-        // output records
-		
-/*		int n1s = 0;
-		int n2s = 0;
-		int n4s = 0;
-	int n8s = 0;
-		int n16s = 0;
-	int n32s = 0;
-		int n64s = 0;
-	int n128s = 0;
-		int n256s = 0;
-		int n512s = 0;
-		int n1024s = 0;
-		int n2048s = 0;
-	int n4096s = 0;
-		int n8192s = 0;
-		int n16384s = 0; */
-        for(int id=0;id<n;id++){
+        System.out.println("Seed = "+seed+", chunks = "+chunks);   // to generate the same file again
+        chunks = Math.max(1, Math.min(chunks, n));
+        
+        // seeds of the streams of each chunk, derived in order from the seed
+        SplittableRandom root = new SplittableRandom(seed);
+        long[] arrivalSeeds = new long[chunks];
+        long[] clientSeeds = new long[chunks];
+        for(int k=0; k<chunks; k++){
+            arrivalSeeds[k] = root.nextLong();
+            clientSeeds[k] = root.nextLong();
+        }
+        
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        FileChannel output = null;
+        try{
+            // first arrival of each chunk, only Poisson arrivals depend on the previous chunks
+            long[] firstArrival = new long[chunks];
+            if(arrivalDist==3){
+                ArrayList<Future<Long>> sums = new ArrayList<Future<Long>>();
+                for(int k=0; k<chunks-1; k++){
+                    final int chunk = k;
+                    final int n0 = n;
+                    final int fchunks = chunks;
+                    sums.add(pool.submit(() -> poissonSum(new SplittableRandom(arrivalSeeds[chunk]), first(chunk+1, n0, fchunks)-first(chunk, n0, fchunks))));
+                }
+                for(int k=1; k<chunks; k++) firstArrival[k] = firstArrival[k-1]+sums.get(k-1).get();
+            }
+            
+            output = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            if(events){
+                // generate the chunks in parallel, each one sorted by time, in memory if they fit or else in temporary files
+                boolean spill = 32L*n > Runtime.getRuntime().maxMemory()/4;
+                File directory = file.getAbsoluteFile().getParentFile();
+                ArrayList<Future<eventRun>> runs = new ArrayList<Future<eventRun>>();
+                for(int k=0; k<chunks; k++){
+                    final int chunk = k;
+                    final int n0 = n;
+                    final int fchunks = chunks;
+                    final int fLaxRange = laxRange;
+                    final int fLaxDist = laxDist;
+                    final int fArrivalDist = arrivalDist;
+                    runs.add(pool.submit(() -> new eventRun(chunk(first(chunk, n0, fchunks), first(chunk+1, n0, fchunks), n0, fLaxRange, fLaxDist, fArrivalDist,
+                                                                  (int)firstArrival[chunk], new SplittableRandom(arrivalSeeds[chunk]), new SplittableRandom(clientSeeds[chunk])),
+                                                            spill ? File.createTempFile("events", ".run", directory) : null)));
+                }
+                // merge them
+                PriorityQueue<eventRun> queue = new PriorityQueue<eventRun>(Comparator.comparingLong(eventRun::key));
+                for(int k=0; k<chunks; k++){
+                    eventRun run = runs.get(k).get();
+                    if(run.next()) queue.add(run);
+                }
+                writeEvents(queue, output);
+                output.close();
+                return;
+            }
+            
+            // generate the chunks in parallel and write them in order, keeping at most 2 chunks per thread in memory
+            output.write(ByteBuffer.wrap(("========================print out input==========================\n"+
+                                          "it id  Arrive  weight    1/weight     Departure\n").getBytes("US-ASCII")));
+            byte[][] inverses = inverses(laxRange);
+            int window = 2*Runtime.getRuntime().availableProcessors();
+            ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+            for(int k=0; k<chunks || !pending.isEmpty(); k++){
+                if(k<chunks){
+                    final int chunk = k;
+                    final int n0 = n;
+                    final int fchunks = chunks;
+                    final int fLaxRange = laxRange;
+                    final int fLaxDist = laxDist;
+                    final int fArrivalDist = arrivalDist;
+                    pending.add(pool.submit(() -> format(chunk(first(chunk, n0, fchunks), first(chunk+1, n0, fchunks), n0, fLaxRange, fLaxDist, fArrivalDist,
+                                                               (int)firstArrival[chunk], new SplittableRandom(arrivalSeeds[chunk]), new SplittableRandom(clientSeeds[chunk])), inverses)));
+                }
+                if(pending.size()>=window || k>=chunks){
+                    ByteBuffer records = ByteBuffer.wrap(pending.poll().get());
+                    while(records.hasRemaining()) output.write(records);
+                }
+            }
+            output.close();
+        }catch(InterruptedException | ExecutionException excp){
+            System.out.println("Generation failed: "+excp.getCause());
+            if(output!=null) output.close();
+            file.delete();
+        }finally{
+            pool.shutdown();
+        }
+	}
+    
+    // first id of the given chunk (chunk = chunks for n)
+    private static int first(int chunk, int n, int chunks){
+        return (int)((long)chunk*n/chunks);
+    }
+    
+    // generates the clients with ids from firstId to lastId-1, returns them one after the other {id, arrival, laxity, departure, id, ...}
+    // arrival is the last arrival before the chunk (Poisson arrivals only)
+    private static int[] chunk(int firstId, int lastId, int n, int laxRange, int laxDist, int arrivalDist, int arrival,
+                               SplittableRandom arrivalRand, SplittableRandom rand){
+        int laxity=0;
+        int departure=0;
+        int[] records = new int[4*(lastId-firstId)];
+        for(int id=firstId;id<lastId;id++){
             // compute a client
             switch(arrivalDist){
                 case 1: // uniform distribution
-                    arrival = rand.nextInt(2*n);
+                    arrival = arrivalRand.nextInt(2*n);
                     break;
                 case 2: // 3 batches of n/3 clients arriving at t=1, t=n/2, and t=n
                     if(id<n/3) arrival = 1;
@@ -123,72 +217,115 @@ public class inputGenWC{
                     }
                     break;
                 case 3: // Poisson distribution with rate 0.7
-                    arrival = arrival+poisson(0.7);
+                    arrival = arrival+poisson(0.7, arrivalRand);
                     break;
             }
             departure = rand.nextInt(2*n-arrival)+arrival;
             switch(laxDist){
                 case 1:
                 	if (laxRange ==1024) {
-                	int power = (int)(Math.random()*7+4);
-                	laxity = (int)(Math.pow(2,power)); // uniform distribution
+                	laxity = 1<<(rand.nextInt(7)+4); // uniform distribution
 					break;
                 	}
 					if (laxRange==4096) {
-						int power = (int)(Math.random()*9+4);
-	                	laxity = (int)(Math.pow(2,power)); // uniform distribution
+	                	laxity = 1<<(rand.nextInt(9)+4); // uniform distribution
 						break;
 					}
 					if (laxRange == 16384){	
-						int power = (int)(Math.random()*11+4);
-	                	laxity = (int)(Math.pow(2,power)); // uniform distribution
+	                	laxity = 1<<(rand.nextInt(11)+4); // uniform distribution
 						break;
 					}
 					
                 case 2:
-                    if(Math.random()>.3) // with probability .7 draw a laxity in the lower half of the range
+                    if(rand.nextDouble()>.3) // with probability .7 draw a laxity in the lower half of the range
                         laxity = rand.nextInt(laxRange/2)+1;
                     else // with probability .3 draw a laxity in the upper half of the range
                         laxity = rand.nextInt(laxRange/2)+laxRange/2+1;
                     break;
                 case 3:
-                    if(Math.random()>.3) // with probability .7 draw a laxity in the upper half of the range
+                    if(rand.nextDouble()>.3) // with probability .7 draw a laxity in the upper half of the range
                         laxity = rand.nextInt(laxRange/2)+laxRange/2+1;
                     else // with probability .3 draw a laxity in the lower half of the range
                         laxity = rand.nextInt(laxRange/2)+1;
                     break;
             }
-    /*        switch(laxity){
-           
-            	case 1: n1s++;break;
-            	case 2: n2s++;break;
-            	case 4: n4s++;break;
-            	case 8: n8s++;break;
-            	case 16: n16s++;break;
-            	case 32: n32s++;break;
-        	case 64: n64s++;break;
-          	case 128: n128s++;break;
-           	case 256: n256s++;break;
-            	case 512: n512s++;break;
-            	case 1024: n1024s++;break;
-            	case 2048: n2048s++;break;
-           	case 4096: n4096s++;break;
-           	case 8192: n8192s++;break;
-            	case 16384: n16384s++;break;
-            }*/
-    				output.printf("%8d   %8d   %5d   %20.14f   %8d\n",(int)(id), (int)(arrival), (int)(laxity), 1.0/laxity, (int)(departure));
-    					}
-  //      System.out.println("There are " + n1s + " 1s " + n2s + " 2s \n"+ n4s + " 4s\n "+ n8s + " 8s \n"+ n16s + " 16s \n"+ n32s + " 32s \n"+ n64s + " 64s \n"+ n128s + " 128s \n"+ n256s + " 256s \n" + n512s + " 512s \n" + n1024s + " 1024s \n" + n2048s + " 2048s \n" + n4096s + " 4096s \n" + n8192s + " 8192s \n" + n16384s + " 16384s \n");		
- 
-    
-        output.close();
-        
-	}
+            records[4*(id-firstId)] = id;
+            records[4*(id-firstId)+1] = arrival;
+            records[4*(id-firstId)+2] = laxity;
+            records[4*(id-firstId)+3] = departure;
+        }
+        return records;
+    }
+    
+    // formats the records of the clients as output.printf("%8d   %8d   %5d   %20.14f   %8d\n", id, arrival, laxity, 1.0/laxity, departure)
+    private static byte[] format(int[] records, byte[][] inverses){
+        int laxity=0;
+        recordBuffer output = new recordBuffer(62*(records.length/4));    // 62 bytes per record unless a number is wider than its column
+        for(int r=0; r<records.length; r+=4){
+            laxity = records[r+2];
+            output.appendInt(records[r], 8);
+            output.appendSpaces(3);
+            output.appendInt(records[r+1], 8);
+            output.appendSpaces(3);
+            output.appendInt(laxity, 5);
+            output.appendSpaces(3);
+            output.append((laxity<inverses.length) ? inverses[laxity] : inverse(laxity));
+            output.appendSpaces(3);
+            output.appendInt(records[r+3], 8);
+            output.append((byte)'\n');
+        }
+        return output.toArray();
+    }
+    
+    // writes the events of the runs merged by time (then id), as {time, id, laxity, event} with event 1 for an arrival and 0 for a departure
+    private static void writeEvents(PriorityQueue<eventRun> queue, FileChannel output) throws IOException{
+        eventRun run = null;
+        recordBuffer buffer = new recordBuffer(1<<20);
+        buffer.append("=========================print out events========================\n".getBytes("US-ASCII"));
+        buffer.append("    time         id   weight   event\n".getBytes("US-ASCII"));
+        while(!queue.isEmpty()){
+            run = queue.poll();
+            buffer.appendInt(run.time, 8);
+            buffer.appendSpaces(3);
+            buffer.appendInt(run.id, 8);
+            buffer.appendSpaces(3);
+            buffer.appendInt(run.laxity, 5);
+            buffer.appendSpaces(3);
+            buffer.appendInt(run.event, 1);
+            buffer.append((byte)'\n');
+            if(buffer.size()>=(1<<20)-64){
+                ByteBuffer bytes = buffer.toByteBuffer();
+                while(bytes.hasRemaining()) output.write(bytes);
+                buffer.clear();
+            }
+            if(run.next()) queue.add(run);
+        }
+        ByteBuffer bytes = buffer.toByteBuffer();
+        while(bytes.hasRemaining()) output.write(bytes);
+    }
+    
+    // 1/laxity formatted as %20.14f for the laxities up to laxRange (up to 2^20)
+    private static byte[][] inverses(int laxRange){
+        byte[][] inverses = new byte[Math.min(laxRange, 1<<20)+1][];
+        for(int laxity=1; laxity<inverses.length; laxity++) inverses[laxity] = inverse(laxity);
+        return inverses;
+    }
+    
+    // 1/laxity formatted as %20.14f
+    private static byte[] inverse(int laxity){
+        return String.format(Locale.ROOT, "%20.14f", 1.0/laxity).getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    }
+    
+    // sum of the given number of Poisson arrivals with rate 0.7
+    private static long poissonSum(SplittableRandom random, int count){
+        long sum = 0;
+        for(int i=0; i<count; i++) sum += poisson(0.7, random);
+        return sum;
+    }
 		
     // poisson arrivals generator
-    private static int poisson(double mean) {
+    private static int poisson(double mean, SplittableRandom random) {
         int r = 0;
-        Random random = new Random();
         double a = random.nextDouble();
         double p = Math.exp(-mean);
         
@@ -199,4 +336,188 @@ public class inputGenWC{
         }
         return r;
     }
-}    
+}
+
+
+/*************************************************************************
+ *
+ *  Description: Worst case simulator for CPR protocol
+ *  Purpose: bytes of the records of a chunk, formatted without Strings
+ *
+ *  Visible data fields: none
+ *
+ *  Visible methods: append, appendSpaces, appendInt, size, clear, toArray, toByteBuffer
+ *
+ *************************************************************************/
+class recordBuffer{
+    
+    // data fields
+    private byte[] bytes;
+    private int size=0;
+    
+    // constructor
+    recordBuffer(int capacity){
+        this.bytes = new byte[Math.max(capacity, 16)];
+    }
+    
+    // appends a byte
+    public void append(byte b){
+        this.ensure(1);
+        this.bytes[this.size] = b;
+        this.size++;
+    }
+    
+    // appends some bytes
+    public void append(byte[] b){
+        this.ensure(b.length);
+        System.arraycopy(b, 0, this.bytes, this.size, b.length);
+        this.size += b.length;
+    }
+    
+    // appends some spaces
+    public void appendSpaces(int count){
+        this.ensure(count);
+        Arrays.fill(this.bytes, this.size, this.size+count, (byte)' ');
+        this.size += count;
+    }
+    
+    // appends an int right-aligned in a column of the given width (as %<width>d)
+    public void appendInt(int value, int width){
+        long v = Math.abs((long)value);
+        int digits = 1;
+        for(long p=10; p<=v; p*=10) digits++;
+        int length = digits+((value<0)?1:0);
+        if(length<width) this.appendSpaces(width-length);
+        this.ensure(length);
+        int end = this.size+length;
+        for(int i=end-1; i>=end-digits; i--){
+            this.bytes[i] = (byte)('0'+v%10);
+            v /= 10;
+        }
+        if(value<0) this.bytes[this.size] = '-';
+        this.size = end;
+    }
+    
+    // number of bytes appended so far
+    public int size(){
+        return this.size;
+    }
+    
+    // removes all the bytes
+    public void clear(){
+        this.size = 0;
+    }
+    
+    // bytes appended so far
+    public byte[] toArray(){
+        return (this.size==this.bytes.length) ? this.bytes : Arrays.copyOf(this.bytes, this.size);
+    }
+    
+    // bytes appended so far, without copying them
+    public ByteBuffer toByteBuffer(){
+        return ByteBuffer.wrap(this.bytes, 0, this.size);
+    }
+    
+    // makes room for extra bytes
+    private void ensure(int extra){
+        if(this.size+extra>this.bytes.length) this.bytes = Arrays.copyOf(this.bytes, Math.max(2*this.bytes.length, this.size+extra));
+    }
+}
+
+
+/*************************************************************************
+ *
+ *  Description: Worst case simulator for CPR protocol
+ *  Purpose: events of a chunk of clients sorted by time, kept in memory or in a temporary file
+ *
+ *  Visible data fields: time, id, laxity, event (the current event)
+ *
+ *  Visible methods: next, key
+ *
+ *   Remarks
+ *   -------
+ *  Events are sorted by time and then id, as the simulators process them. A client whose
+ *  departure time is its arrival time only arrives, as in the simulators.
+ *
+ *************************************************************************/
+class eventRun{
+    
+    // data fields
+    public int time=0;                  // current event
+    public int id=0;
+    public int laxity=0;
+    public int event=0;                 // 1 = arrival, 0 = departure
+    private int[] records;              // clients of the chunk {id, arrival, laxity, departure, id, ...} (in memory)
+    private long[] keys;                // events sorted, as time<<32 | position of the client<<1 | departure
+    private int position=0;             // next event
+    private File file;                  // temporary file with the events {time, id, laxity, event, time, ...} (spilled)
+    private DataInputStream input;
+    private long remaining=0;           // events left in the file
+    
+    // constructor, sorts the events of the clients and writes them to the given file (if not null)
+    eventRun(int[] records, File file) throws IOException{
+        int count = 0;
+        this.keys = new long[records.length/2];
+        for(int r=0; r<records.length; r+=4){
+            this.keys[count] = ((long)records[r+1]<<32) | (r/4)<<1;                         // arrival
+            count++;
+            if(records[r+3]!=records[r+1]){
+                this.keys[count] = ((long)records[r+3]<<32) | (r/4)<<1 | 1;                 // departure
+                count++;
+            }
+        }
+        Arrays.sort(this.keys, 0, count);
+        this.keys = Arrays.copyOf(this.keys, count);
+        this.records = records;
+        if(file!=null){
+            file.deleteOnExit();
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1<<16));
+            while(this.decode()){
+                output.writeInt(this.time);
+                output.writeInt(this.id);
+                output.writeInt(this.laxity);
+                output.writeInt(this.event);
+            }
+            output.close();
+            this.remaining = count;
+            this.records = null;
+            this.keys = null;
+            this.file = file;
+            this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1<<16));
+        }
+    }
+    
+    // moves to the next event, returns false if there are no more (the temporary file is then deleted)
+    public boolean next() throws IOException{
+        if(this.file==null) return this.decode();
+        if(this.remaining==0){
+            this.input.close();
+            this.file.delete();
+            return false;
+        }
+        this.time = this.input.readInt();
+        this.id = this.input.readInt();
+        this.laxity = this.input.readInt();
+        this.event = this.input.readInt();
+        this.remaining--;
+        return true;
+    }
+    
+    // order of the current event in the merge: by time, then id
+    public long key(){
+        return ((long)this.time<<32) | this.id;
+    }
+    
+    // moves to the next event of the sorted keys
+    private boolean decode(){
+        if(this.position==this.keys.length) return false;
+        long key = this.keys[this.position];
+        int r = 4*(((int)key)>>>1);
+        this.time = (int)(key>>>32);
+        this.id = this.records[r];
+        this.laxity = this.records[r+2];
+        this.event = ((key&1)==0) ? 1 : 0;
+        this.position++;
+        return true;
+    }
+}
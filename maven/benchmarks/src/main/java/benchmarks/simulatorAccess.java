@@ -0,0 +1,219 @@
+package benchmarks;
+
+/*************************************************************************
+ *
+ *  Paper:
+ *  "Station Assignment with Reallocation"
+ *  Austin Halper, Miguel A. Mosteiro, Yulia Rossikova, and Prudence W. H. Wong
+ *  Proceedings of 14th International Symposium on Experimental Algorithms (SEA 2015)
+ *
+ *  Description: Benchmarks of the simulator for CPR protocol
+ *  Class: simulatorAccess
+ *
+ *  Data fields:
+ final static Class<?> SIMULATOR;
+ final static Class<?> CLIENTS;
+ final static Class<?> GROUP;
+ final static Class<?> STATION;
+ private final static MethodHandle NEW_SIMULATOR;
+ private final static MethodHandle ADD;
+ private final static MethodHandle DELETE;
+ private final static MethodHandle REALLOCATE;
+ private final static MethodHandle GROUP_REALLOCATE;
+ private final static MethodHandle WITHIN_STATION;
+ private final static Field CLIENT_SET;
+ private final static Field GROUPS;
+ private final static Field STATIONS;
+ *
+ *  Methods:
+ static int constant(String name){
+ static Object newSimulator(int factor){
+ static Object clientSet(Object simulator){
+ static int[] clientField(Object clientSet, String name){
+ static int allocate(Object clientSet){
+ static Object[] groups(Object simulator){
+ static Object[] stations(Object myGroup){
+ static void add(Object simulator, int myClient){
+ static void delete(Object simulator, int myClient){
+ static void reallocate(Object simulator, int time){
+ static double reallocateGroup(Object myGroup, int time){
+ static void reallocateWithinStation(Object myStation){
+ private static Field field(Class<?> owner, String name) throws ReflectiveOperationException{
+ private static MethodHandle method(Class<?> owner, String name, Class<?>... parameters) throws ReflectiveOperationException{
+ *
+ *   Remarks
+ *   -------
+ *  The simulator and its classes are in the default package, which cannot be imported
+ *  (and JMH does not accept benchmarks in the default package), so the benchmarks reach
+ *  them through method handles. The handles are static final, hence the JIT compiler
+ *  inlines them as direct calls in the measured code.
+ *
+ *************************************************************************/
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+
+final class simulatorAccess{
+    // access to the package-private classes of SAsimulator
+    
+    final static Class<?> SIMULATOR;
+    final static Class<?> CLIENTS;
+    final static Class<?> GROUP;
+    final static Class<?> STATION;
+    private final static MethodHandle NEW_SIMULATOR;       // SAsimulator(int factor), streaming mode constructor
+    private final static MethodHandle ADD;                 // SAsimulator.add(int myClient)
+    private final static MethodHandle DELETE;              // SAsimulator.delete(int myClient)
+    private final static MethodHandle REALLOCATE;          // SAsimulator.reallocate(int time)
+    private final static MethodHandle GROUP_REALLOCATE;    // group.reallocate(int time)
+    private final static MethodHandle WITHIN_STATION;      // station.reallocateWithinStation()
+    private final static Field CLIENT_SET;                 // SAsimulator.clientSet
+    private final static Field GROUPS;                     // SAsimulator.groups
+    private final static Field STATIONS;                   // group.myGroup
+    
+    static{
+        try{
+            SIMULATOR = Class.forName("SAsimulator");
+            CLIENTS = Class.forName("clients");
+            GROUP = Class.forName("group");
+            STATION = Class.forName("station");
+            Constructor<?> constructor = SIMULATOR.getDeclaredConstructor(int.class);
+            constructor.setAccessible(true);
+            NEW_SIMULATOR = MethodHandles.lookup().unreflectConstructor(constructor).asType(MethodType.methodType(Object.class, int.class));
+            ADD = method(SIMULATOR, "add", int.class);
+            DELETE = method(SIMULATOR, "delete", int.class);
+            REALLOCATE = method(SIMULATOR, "reallocate", int.class);
+            GROUP_REALLOCATE = method(GROUP, "reallocate", int.class);
+            WITHIN_STATION = method(STATION, "reallocateWithinStation");
+            CLIENT_SET = field(SIMULATOR, "clientSet");
+            GROUPS = field(SIMULATOR, "groups");
+            STATIONS = field(GROUP, "myGroup");
+        }catch(ReflectiveOperationException excp){
+            throw new ExceptionInInitializerError("The simulator classes are not in the classpath: "+excp);
+        }
+    }
+    
+    // value of a constant of SAsimulator, e.g. LINEAR
+    static int constant(String name){
+        try{
+            return field(SIMULATOR, name).getInt(null);
+        }catch(ReflectiveOperationException excp){
+            throw new IllegalArgumentException("No constant "+name+" in SAsimulator.");
+        }
+    }
+    
+    // simulator without clients, of the given type
+    static Object newSimulator(int factor){
+        try{
+            return (Object)NEW_SIMULATOR.invokeExact(factor);
+        }catch(Throwable excp){
+            throw new IllegalStateException(excp);
+        }
+    }
+    
+    // clients of the simulator
+    static Object clientSet(Object simulator){
+        try{
+            return CLIENT_SET.get(simulator);
+        }catch(ReflectiveOperationException excp){
+            throw new IllegalStateException(excp);
+        }
+    }
+    
+    // array of a field of the clients (id, arrivaltime, departuretime, laxity), valid until the next allocate
+    static int[] clientField(Object clientSet, String name){
+        try{
+            return (int[])field(CLIENTS, name).get(clientSet);
+        }catch(ReflectiveOperationException excp){
+            throw new IllegalStateException(excp);
+        }
+    }
+    
+    // position of a new client
+    static int allocate(Object clientSet){
+        try{
+            return (int)method(CLIENTS, "allocate").invoke(clientSet);
+        }catch(Throwable excp){
+            throw new IllegalStateException(excp);
+        }
+    }
+    
+    // groups of the simulator, in order
+    static Object[] groups(Object simulator){
+        try{
+            return ((List<?>)GROUPS.get(simulator)).toArray();
+        }catch(ReflectiveOperationException excp){
+            throw new IllegalStateException(excp);
+        }
+    }
+    
+    // stations of a group, in order
+    static Object[] stations(Object myGroup){
+        try{
+            return ((List<?>)STATIONS.get(myGroup)).toArray();
+        }catch(ReflectiveOperationException excp){
+            throw new IllegalStateException(excp);
+        }
+    }
+    
+    static void add(Object simulator, int myClient){
+        try{
+            ADD.invokeExact(simulator, myClient);
+        }catch(Throwable excp){
+            throw new IllegalStateException(excp);
+        }
+    }
+    
+    static void delete(Object simulator, int myClient){
+        boolean deleted = false;
+        try{
+            deleted = (boolean)DELETE.invokeExact(simulator, myClient);
+        }catch(Throwable excp){
+            throw new IllegalStateException(excp);
+        }
+        if(!deleted) throw new IllegalStateException("Attempt to remove a non-existent client "+myClient+".");
+    }
+    
+    static void reallocate(Object simulator, int time){
+        try{
+            REALLOCATE.invokeExact(simulator, time);
+        }catch(Throwable excp){
+            throw new IllegalStateException(excp);
+        }
+    }
+    
+    static double reallocateGroup(Object myGroup, int time){
+        try{
+            return (double)GROUP_REALLOCATE.invokeExact(myGroup, time);
+        }catch(Throwable excp){
+            throw new IllegalStateException(excp);
+        }
+    }
+    
+    static void reallocateWithinStation(Object myStation){
+        try{
+            WITHIN_STATION.invokeExact(myStation);
+        }catch(Throwable excp){
+            throw new IllegalStateException(excp);
+        }
+    }
+    
+    // accessible field of a class
+    private static Field field(Class<?> owner, String name) throws ReflectiveOperationException{
+        Field field = owner.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+    
+    // method handle of a method of a class, with the receiver as an Object
+    private static MethodHandle method(Class<?> owner, String name, Class<?>... parameters) throws ReflectiveOperationException{
+        Method method = owner.getDeclaredMethod(name, parameters);
+        method.setAccessible(true);
+        MethodHandle handle = MethodHandles.lookup().unreflect(method);
+        return handle.asType(handle.type().changeParameterType(0, Object.class));
+    }
+}
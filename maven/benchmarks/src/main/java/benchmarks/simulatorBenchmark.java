@@ -0,0 +1,162 @@
+package benchmarks;
+
+/*************************************************************************
+ *
+ *  Paper:
+ *  "Station Assignment with Reallocation"
+ *  Austin Halper, Miguel A. Mosteiro, Yulia Rossikova, and Prudence W. H. Wong
+ *  Proceedings of 14th International Symposium on Experimental Algorithms (SEA 2015)
+ *
+ *  Description: Benchmarks of the simulator for CPR protocol
+ *  Class: simulatorBenchmark
+ *
+ *  Parameters (JMH -p):
+ factor      CONSTANT, LOGARITHMIC or LINEAR    type of simulator
+ wMax        1024, 4096 or 16384                largest laxity, laxities are powers of 2 from 16 to wMax with uniform exponent
+ occupancy   0.25, 0.5 or 0.9                   fraction of the CLIENTS clients that are still active (the others departed)
+ *
+ *  Benchmarks (average time per operation):
+ add                        SAsimulator.add, of BATCH clients to the synthetic state (removed after each invocation)
+ delete                     SAsimulator.delete, of BATCH clients added to the synthetic state before each invocation
+ reallocate                 SAsimulator.reallocate of the synthetic state, built again before each invocation
+ groupReallocate            group.reallocate of all the groups of the synthetic state, built again before each invocation
+ reallocateWithinStation    station.reallocateWithinStation of all the stations of the synthetic state, built again before each invocation
+ *
+ *  Methods:
+ public void add(addState state){
+ public void delete(deleteState state){
+ public void reallocate(reallocateState state){
+ public double groupReallocate(reallocateState state){
+ public void reallocateWithinStation(reallocateState state){
+ *
+ *   Remarks
+ *   -------
+ *  The synthetic state is CLIENTS clients with random laxities added to the simulator, followed by
+ *  the departure of each one with probability 1-occupancy, without reallocation. The random numbers
+ *  come from SEED, so the state is the same for the same parameters in every run.
+ *  The states of reallocate are built by a setup at each invocation, which JMH does not measure
+ *  but makes the runs slower.
+ *
+ *************************************************************************/
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class simulatorBenchmark{
+    
+    final static int CLIENTS = 4096;        // clients of the synthetic state before the departures
+    final static int BATCH = 256;           // clients added or deleted by an invocation
+    final static long SEED = 2015;          // seed of the synthetic states
+    final static int TIME = 1;              // time of the reallocations
+    
+    // synthetic state of a simulator
+    @State(Scope.Thread)
+    public static abstract class synthetic{
+        @Param({"CONSTANT", "LOGARITHMIC", "LINEAR"})
+        public String factor;
+        @Param({"1024", "4096", "16384"})
+        public int wMax;
+        @Param({"0.25", "0.5", "0.9"})
+        public double occupancy;
+        
+        Object simulator;
+        int[] spare = new int[BATCH];       // clients that are not in the simulator, to add
+        
+        // builds the synthetic state
+        void build(){
+            this.simulator = simulatorAccess.newSimulator(simulatorAccess.constant(this.factor));
+            Object clientSet = simulatorAccess.clientSet(this.simulator);
+            for(int i=0; i<CLIENTS+BATCH; i++) simulatorAccess.allocate(clientSet);     // positions 0 to CLIENTS+BATCH-1
+            int[] id = simulatorAccess.clientField(clientSet, "id");
+            int[] laxity = simulatorAccess.clientField(clientSet, "laxity");
+            SplittableRandom random = new SplittableRandom(SEED);
+            int exponents = 31-Integer.numberOfLeadingZeros(this.wMax)-4+1;          // laxities 2^4 to wMax
+            for(int myClient=0; myClient<CLIENTS+BATCH; myClient++){
+                id[myClient] = myClient+1;
+                laxity[myClient] = 1<<(4+random.nextInt(exponents));
+            }
+            for(int myClient=0; myClient<CLIENTS; myClient++)
+                simulatorAccess.add(this.simulator, myClient);
+            for(int myClient=0; myClient<CLIENTS; myClient++)
+                if(random.nextDouble()>=this.occupancy) simulatorAccess.delete(this.simulator, myClient);
+            for(int i=0; i<BATCH; i++) this.spare[i] = CLIENTS+i;
+        }
+    }
+    
+    // state for add: the spare clients are deleted after each invocation
+    @State(Scope.Thread)
+    public static class addState extends synthetic{
+        @Setup(Level.Trial)
+        public void setup(){
+            this.build();
+        }
+        @TearDown(Level.Invocation)
+        public void restore(){
+            for(int i=0; i<BATCH; i++) simulatorAccess.delete(this.simulator, this.spare[i]);
+        }
+    }
+    
+    // state for delete: the spare clients are added before each invocation
+    @State(Scope.Thread)
+    public static class deleteState extends synthetic{
+        @Setup(Level.Trial)
+        public void setup(){
+            this.build();
+        }
+        @Setup(Level.Invocation)
+        public void prepare(){
+            for(int i=0; i<BATCH; i++) simulatorAccess.add(this.simulator, this.spare[i]);
+        }
+    }
+    
+    // state for the reallocations: built again before each invocation, since reallocation consumes the holes
+    @State(Scope.Thread)
+    public static class reallocateState extends synthetic{
+        Object[] groups;
+        Object[][] stations;                // stations of each group
+        @Setup(Level.Invocation)
+        public void setup(){
+            this.build();
+            this.groups = simulatorAccess.groups(this.simulator);
+            this.stations = new Object[this.groups.length][];
+            for(int g=0; g<this.groups.length; g++) this.stations[g] = simulatorAccess.stations(this.groups[g]);
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void add(addState state){
+        for(int i=0; i<BATCH; i++) simulatorAccess.add(state.simulator, state.spare[i]);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void delete(deleteState state){
+        for(int i=0; i<BATCH; i++) simulatorAccess.delete(state.simulator, state.spare[i]);
+    }
+    
+    @Benchmark
+    public void reallocate(reallocateState state){
+        simulatorAccess.reallocate(state.simulator, TIME);
+    }
+    
+    @Benchmark
+    public double groupReallocate(reallocateState state){
+        double reallocatedWeight = 0;
+        for(int g=0; g<state.groups.length; g++)
+            if(state.stations[g].length>0) reallocatedWeight += simulatorAccess.reallocateGroup(state.groups[g], TIME);
+        return reallocatedWeight;
+    }
+    
+    @Benchmark
+    public void reallocateWithinStation(reallocateState state){
+        for(int g=0; g<state.stations.length; g++)
+            for(int i=0; i<state.stations[g].length; i++) simulatorAccess.reallocateWithinStation(state.stations[g][i]);
+    }
+}
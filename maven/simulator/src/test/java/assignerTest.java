@@ -0,0 +1,174 @@
+/*************************************************************************
+ *  Compilation:  mvn -B test (module maven/simulator)
+ *
+ *  Description: Cases of the online mode of SAsimulator
+ *  Class: assignerTest
+ *
+ *  Methods:
+ public void completesInSubmissionOrder() throws Exception{
+ public void rejectsInvalidCommands() throws Exception{
+ public void failsAfterClose(){
+ public void stopsWhenTheSimulatorFails() throws Exception{
+ public void keepsTheInvariantWithManyProducers() throws Exception{
+ private static Throwable cause(CompletableFuture<int[]> future){
+ *
+ *   Remarks
+ *   -------
+ *  Surefire runs the tests with assertions enabled, so group.invariant is checked after every reallocation
+ *  and a violation stops the writer of the assigner.
+ *
+ *************************************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class assignerTest{
+
+    // a ring smaller than the commands, so the producer waits for the writer too
+    @Test
+    public void completesInSubmissionOrder() throws Exception{
+        assigner myAssigner = new assigner(SAsimulator.CONSTANT, 16);
+        List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+        List<CompletableFuture<int[]>> futures = new ArrayList<CompletableFuture<int[]>>();
+        for(int id=0; id<1000; id++){
+            final int myId = id;
+            CompletableFuture<int[]> future = myAssigner.arrive(id, 16, id/100);
+            future.thenRun(() -> completed.add(myId));
+            futures.add(future);
+        }
+        myAssigner.close();
+        List<Integer> expected = new ArrayList<Integer>();
+        for(int id=0; id<1000; id++) expected.add(id);
+        assertEquals(expected, completed);
+        // laxity 16 is the class [16,32) of the constant factor, one client per tree
+        for(CompletableFuture<int[]> future : futures){
+            int[] place = future.get(0, TimeUnit.SECONDS);
+            assertEquals(16, place[0]);
+            assertEquals(32, place[1]);
+            assertEquals(1, place[4]);
+        }
+    }
+
+    @Test
+    public void rejectsInvalidCommands() throws Exception{
+        assigner myAssigner = new assigner(SAsimulator.LINEAR, 64);
+        CompletableFuture<int[]> first = myAssigner.arrive(0, 16, 5);
+        CompletableFuture<int[]> earlier = myAssigner.arrive(1, 16, 3);           // time decreases
+        CompletableFuture<int[]> notPower = myAssigner.arrive(2, 24, 5);
+        CompletableFuture<int[]> zero = myAssigner.arrive(3, 0, 5);
+        CompletableFuture<int[]> duplicate = myAssigner.arrive(0, 16, 5);
+        CompletableFuture<int[]> unknown = myAssigner.depart(7, 5);
+        CompletableFuture<int[]> departure = myAssigner.depart(0, 6);
+        myAssigner.close();
+        assertInstanceOf(IllegalArgumentException.class, cause(earlier));
+        assertInstanceOf(IllegalArgumentException.class, cause(notPower));
+        assertInstanceOf(IllegalArgumentException.class, cause(zero));
+        assertInstanceOf(IllegalStateException.class, cause(duplicate));
+        assertInstanceOf(IllegalStateException.class, cause(unknown));
+        // the invalid commands fail alone, the client departs from where it arrived
+        assertArrayEquals(first.get(0, TimeUnit.SECONDS), departure.get(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failsAfterClose(){
+        assigner myAssigner = new assigner(SAsimulator.LOGARITHMIC, 8);
+        myAssigner.close();
+        assertInstanceOf(IllegalStateException.class, cause(myAssigner.arrive(0, 16, 0)));
+        assertInstanceOf(IllegalStateException.class, cause(myAssigner.depart(0, 0)));
+    }
+
+    // the simulator fails adding a client of laxity 32
+    @Test
+    public void stopsWhenTheSimulatorFails() throws Exception{
+        SAsimulator failing = new SAsimulator(SAsimulator.CONSTANT){
+            @Override
+            public void add(int myClient){
+                if(this.clientSet().laxity[myClient]==32) throw new AssertionError("add failed");
+                super.add(myClient);
+            }
+        };
+        assigner myAssigner = new assigner(failing, SAsimulator.CONSTANT, 8);
+        List<CompletableFuture<int[]>> before = new ArrayList<CompletableFuture<int[]>>();
+        for(int id=0; id<20; id++) before.add(myAssigner.arrive(id, 16, 0));
+        CompletableFuture<int[]> fails = myAssigner.arrive(20, 32, 0);
+        List<CompletableFuture<int[]>> after = new ArrayList<CompletableFuture<int[]>>();
+        for(int id=21; id<100; id++) after.add(myAssigner.arrive(id, 16, 0));     // more than the ring holds
+        for(CompletableFuture<int[]> future : before) future.get(10, TimeUnit.SECONDS);
+        Throwable cause = cause(fails);
+        assertInstanceOf(IllegalStateException.class, cause);
+        assertInstanceOf(AssertionError.class, cause.getCause());
+        for(CompletableFuture<int[]> future : after)
+            assertInstanceOf(IllegalStateException.class, cause(future));
+        IllegalStateException closing = assertThrows(IllegalStateException.class, myAssigner::close);
+        assertInstanceOf(AssertionError.class, closing.getCause());
+        assertTrue(myAssigner.arrive(200, 16, 0).isCompletedExceptionally());
+    }
+
+    // producers submit arrivals and departures of their own clients, time slot by time slot
+    @Test
+    public void keepsTheInvariantWithManyProducers() throws Exception{
+        assertTrue(group.class.desiredAssertionStatus(), "the invariant is checked with -ea only");
+        final int producers = 4;
+        final int slots = 200;
+        for(int factor=SAsimulator.CONSTANT; factor<=SAsimulator.LINEAR; factor++){
+            assigner myAssigner = new assigner(factor, 64);
+            CyclicBarrier slot = new CyclicBarrier(producers);     // no command of a slot before all the ones of the slot before
+            List<CompletableFuture<int[]>> futures = Collections.synchronizedList(new ArrayList<CompletableFuture<int[]>>());
+            List<Thread> threads = new ArrayList<Thread>();
+            List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+            for(int p=0; p<producers; p++){
+                final int producer = p;
+                Thread thread = new Thread(() -> {
+                    SplittableRandom random = new SplittableRandom(producer);
+                    List<Integer> active = new ArrayList<Integer>();
+                    int next = producer*1000000;
+                    try{
+                        for(int t=0; t<slots; t++){
+                            slot.await();
+                            // many departures in some slots, to empty whole stations at once
+                            int departures = (t%25==24) ? active.size()*3/4 : random.nextInt(Math.min(active.size(), 5)+1);
+                            for(int i=0; i<departures; i++)
+                                futures.add(myAssigner.depart(active.remove(random.nextInt(active.size())), t));
+                            for(int i=random.nextInt(8); i>0; i--){
+                                futures.add(myAssigner.arrive(next, 1<<(4+random.nextInt(7)), t));  // 16 to 1024
+                                active.add(next++);
+                            }
+                        }
+                    }catch(Exception excp){
+                        errors.add(excp);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for(Thread thread : threads) thread.join();
+            myAssigner.close();                     // throws if the writer was stopped by a violated invariant
+            assertTrue(errors.isEmpty(), errors.toString());
+            for(CompletableFuture<int[]> future : futures){
+                assertTrue(future.isDone());
+                assertFalse(future.isCompletedExceptionally());
+            }
+        }
+    }
+
+    // exception of a future that failed
+    private static Throwable cause(CompletableFuture<int[]> future){
+        CompletionException excp = assertThrows(CompletionException.class, future::join);
+        return excp.getCause();
+    }
+}
@@ -0,0 +1,84 @@
+/*************************************************************************
+ *  Compilation:  mvn -B test (module maven/simulator)
+ *
+ *  Description: Regression cases of SAsimulator.reallocate
+ *  Class: reallocationTest
+ *
+ *  Methods:
+ public void adjacentEmptyStations(){
+ public void adjacentEmptyClasses(){
+ private static int arrive(SAsimulator mySim, int id, int laxity, int time){
+ private static void depart(SAsimulator mySim, int myClient, int time){
+ *
+ *   Remarks
+ *   -------
+ *  The departures of a single time slot may leave several adjacent stations of a class, or several
+ *  adjacent classes, empty. Removing them with a forward loop skipped the one after each removed one.
+ *  Surefire runs the tests with assertions enabled, so group.invariant is checked too.
+ *
+ *************************************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class reallocationTest{
+
+    // laxity 1 is the class [1,2), one client per station
+    @Test
+    public void adjacentEmptyStations(){
+        SAsimulator mySim = new SAsimulator(SAsimulator.CONSTANT);
+        int[] myClients = new int[4];
+        for(int i=0; i<myClients.length; i++)
+            myClients[i] = arrive(mySim, i, 1, 0);
+        assertEquals(4, mySim.numberOfStations(1));
+        // stations 1 and 2 empty, reallocation moves the client of station 3 to station 1 and leaves 2 and 3 empty
+        depart(mySim, myClients[1], 1);
+        depart(mySim, myClients[2], 1);
+        mySim.reallocate(1);
+        assertEquals(2, mySim.numberOfStations(1));
+        assertEquals(2, mySim.numberOfStations());
+        assertEquals(2, mySim.numberOfClients());
+    }
+
+    // laxities 1, 2 and 4 are the classes [1,2), [2,4) and [4,8)
+    @Test
+    public void adjacentEmptyClasses(){
+        SAsimulator mySim = new SAsimulator(SAsimulator.CONSTANT);
+        int first = arrive(mySim, 0, 1, 0);
+        int second = arrive(mySim, 1, 2, 0);
+        arrive(mySim, 2, 4, 0);
+        assertEquals(3, mySim.numberOfClasses());
+        depart(mySim, first, 1);
+        depart(mySim, second, 1);
+        mySim.reallocate(1);
+        assertEquals(1, mySim.numberOfClasses());
+        assertEquals(1, mySim.numberOfStations());
+        assertEquals(1, mySim.numberOfStations(4));
+        assertEquals(0, mySim.numberOfStations(2));
+        // the classes are created again when needed
+        arrive(mySim, 3, 2, 2);
+        assertEquals(2, mySim.numberOfClasses());
+        assertEquals(1, mySim.numberOfStations(2));
+    }
+
+    // adds a client as the streaming mode does, returns its position in clientSet
+    private static int arrive(SAsimulator mySim, int id, int laxity, int time){
+        clients clientSet = mySim.clientSet();
+        int myClient = clientSet.allocate();
+        clientSet.id[myClient] = id+1;
+        clientSet.arrivaltime[myClient] = time;
+        clientSet.departuretime[myClient] = time;
+        clientSet.laxity[myClient] = laxity;
+        mySim.add(myClient);
+        return myClient;
+    }
+
+    // removes a client as the streaming mode does
+    private static void depart(SAsimulator mySim, int myClient, int time){
+        clients clientSet = mySim.clientSet();
+        clientSet.departuretime[myClient] = time;
+        assertEquals(true, mySim.delete(myClient));
+        clientSet.release(myClient);
+    }
+}
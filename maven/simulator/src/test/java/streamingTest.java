@@ -0,0 +1,72 @@
+/*************************************************************************
+ *  Compilation:  mvn -B test (module maven/simulator)
+ *
+ *  Description: Cases of the streaming mode of SAsimulator against the batch mode
+ *  Class: streamingTest
+ *
+ *  Methods:
+ public void sameAsBatch() throws IOException{
+ *
+ *   Remarks
+ *   -------
+ *  The event file lists the events of each time slot in the order of the clients in the input file,
+ *  the order in which the batch mode processes them, so both modes build the same stations.
+ *
+ *************************************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class streamingTest{
+
+    @TempDir
+    Path dir;
+
+    // 300 clients with laxities 1 to 1024, arriving and departing in [0,2N)
+    @Test
+    public void sameAsBatch() throws IOException{
+        final int N = 300;
+        int[] arrival = new int[N];
+        int[] laxity = new int[N];
+        int[] departure = new int[N];
+        SplittableRandom random = new SplittableRandom(11);
+        for(int j=0; j<N; j++){
+            arrival[j] = random.nextInt(2*N-1);
+            laxity[j] = 1<<random.nextInt(11);
+            departure[j] = arrival[j]+1+random.nextInt(2*N-1-arrival[j]);
+        }
+        File inputFile = this.dir.resolve("inputs.txt").toFile();
+        PrintWriter input = new PrintWriter(inputFile);
+        input.println("========================print out input==========================");
+        input.println("item id  Arrive  weight    1/weight     Departure");
+        for(int j=0; j<N; j++)
+            input.println(j+" "+j+" "+arrival[j]+" "+laxity[j]+" "+(1.0/laxity[j])+" "+departure[j]);
+        input.close();
+        File eventFile = this.dir.resolve("events.txt").toFile();
+        PrintWriter events = new PrintWriter(eventFile);
+        events.println("========================print out events==========================");
+        events.println("time id  weight  event");
+        for(int t=0; t<2*N; t++){
+            for(int j=0; j<N; j++){
+                if(arrival[j]==t) events.println(t+" "+j+" "+laxity[j]+" 1");
+                if(departure[j]==t) events.println(t+" "+j+" "+laxity[j]+" 0");
+            }
+        }
+        events.close();
+        for(int factor=SAsimulator.CONSTANT; factor<=SAsimulator.LINEAR; factor++){
+            double[] batch = SAsimulator.batch(new SAsimulator(factor, inputFile, N), N, null);
+            double[] stream = SAsimulator.stream(factor, eventFile, null);
+            assertTrue(batch[1]>0, "no reallocation to compare");
+            assertArrayEquals(batch, stream, 0);
+        }
+    }
+}
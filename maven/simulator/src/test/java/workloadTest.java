@@ -0,0 +1,44 @@
+/*************************************************************************
+ *  Compilation:  mvn -B test (module maven/simulator)
+ *
+ *  Description: Cases of the in-memory workload of SAsimulator
+ *  Class: workloadTest
+ *
+ *  Methods:
+ public void drawsPowersOf2() throws Exception{
+ *
+ *   Remarks
+ *   -------
+ *  The simulator only accepts laxities that are powers of 2, so every distribution of laxities
+ *  and every range must give powers of 2 up to the range.
+ *
+ *************************************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class workloadTest{
+
+    // 1024 is a range of the uniform distribution, 1000 is not
+    @Test
+    public void drawsPowersOf2() throws Exception{
+        int[] ranges = {1000, 1024};
+        for(int laxRange : ranges){
+            for(int laxDist=1; laxDist<=3; laxDist++){
+                workload source = new workload(2000, laxRange, laxDist, 1, 5, 8);
+                int count = 0;
+                for(int[] records=source.next(); records!=null; records=source.next()){
+                    for(int i=0; i<records.length; i+=4){
+                        int laxity = records[i+2];
+                        assertTrue(laxity>0 && Integer.bitCount(laxity)==1, "laxity "+laxity+" of distribution "+laxDist);
+                        assertTrue(laxity<=laxRange, "laxity "+laxity+" out of the range "+laxRange);
+                        count++;
+                    }
+                }
+                assertEquals(2000, count);
+            }
+        }
+    }
+}
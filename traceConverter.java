@@ -0,0 +1,304 @@
+
+/*************************************************************************
+ *
+ *  Paper:
+ *  "Station Assignment with Reallocation"
+ *  Austin Halper, Miguel A. Mosteiro, Yulia Rossikova, and Prudence W. H. Wong
+ *  Proceedings of 14th International Symposium on Experimental Algorithms (SEA 2015)
+ *
+ *  Description: Simulator for CPR protocol
+ *  Purpose: converts input files to the binary trace format read by the simulators
+ *
+ *  Input: (arguments)
+ names of the input files, each one either
+ - a TXT file produced by inputGenWC, columns {id, arrival time, laxity, 1/laxity, departure time},
+   or with an item column first as read by SAsimulator (two header lines in both cases)
+ - an XML file produced by inputGen (<task> records), where the laxity is w_size (size rounded down to a power of 2)
+ *
+ *  Output: for each input file, a file with the same name and extension .bin as follows (all little-endian).
+ Header (16 bytes):
+	int  magic = 0x42544153 ("SATB")
+	int  version = 1
+	long number of clients
+ For each client, a record (16 bytes):
+	int  id
+	int  arrival time
+	int  laxity
+	int  departure time
+ *
+ *  Visible data fields: none
+ *
+ *  Visible methods: main
+ *
+ *  Classes and data structures:
+ *  public class traceConverter     // this converter
+ *  class xmlTrace                  // streaming reader of a trace file in the XML format of inputGen (as in the simulators)
+ *
+ *   Remarks
+ *   -------
+ *  Arrival and departure times are truncated to ints, as the simulators do when they read
+ *  the TXT files. The simulators recognize a binary file by its magic number.
+ *  Laxities must be positive powers of 2, and each XML task must have all of its fields.
+ *  The records are written as they are read, through a buffer of fixed size, and the number of clients
+ *  is written in the header at the end, so the trace is never held in memory. On an error the output is removed.
+ *
+ *************************************************************************/
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import javax.xml.stream.*;
+public class traceConverter{
+
+    // binary format
+    final static int MAGIC = 0x42544153;       // "SATB" in little-endian
+    final static int VERSION = 1;
+    final static int HEADER = 16;               // bytes of the header
+    final static int RECORD = 16;               // bytes of a record
+    final static int BUFFER = 1<<16;            // bytes written at a time, a multiple of RECORD
+
+    // output being written
+    private static File outputFile = null;
+    private static FileChannel output = null;
+    private static ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+    private static long clients = 0;            // records written
+
+	public static void main(String[] args) throws IOException{
+        if(args.length==0){
+            System.out.println("Usage: java traceConverter file.txt|file.xml ...");
+            System.exit(0);
+        }
+        for(int f=0; f<args.length; f++){
+            File inputFile = new File(args[f]);
+            String name = inputFile.getPath();
+            int dot = name.lastIndexOf('.');
+            outputFile = new File(((dot>name.lastIndexOf(File.separatorChar)) ? name.substring(0,dot) : name)+".bin");
+            if (outputFile.exists()){
+                System.out.println("File "+outputFile+" already exists");
+                continue;
+            }
+            output = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            clients = 0;
+            buffer.clear();
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(0);                  // number of clients, written at the end
+            if(name.endsWith(".xml")) readXML(inputFile);
+            else readTXT(inputFile);
+            flush();
+            buffer.putLong(clients).flip();     // number of clients, after magic and version in the header
+            for(long position=8; buffer.hasRemaining(); ) position += output.write(buffer, position);
+            output.close();
+            System.out.println(inputFile+" -> "+outputFile+": "+clients+" clients");
+        }
+	}
+
+    // reads a TXT file and writes its records
+    private static void readTXT(File file) throws IOException{
+        int lineNumber = 2;
+        int skip = -1;                          // 1 if there is an item column, 0 if not
+        int id = 0;
+        int arrival = 0;
+        int laxity = 0;
+        int departure = 0;
+        String line = null;
+        String[] columns = null;
+        BufferedReader input = new BufferedReader(new FileReader(file));
+        input.readLine();   //ignore 1st line
+        input.readLine();   //ignore 2nd line
+        while((line=input.readLine())!=null){
+            lineNumber++;
+            line = line.trim();
+            if(line.isEmpty()) continue;
+            columns = line.split("\\s+");
+            if(skip<0) skip = columns.length-5;
+            if(columns.length!=5+skip)
+                stop("Line "+lineNumber+" of "+file+" has "+columns.length+" columns instead of "+(5+skip)+".");
+            try{
+                id = Integer.parseInt(columns[skip]);
+                arrival = (int)Double.parseDouble(columns[skip+1]);
+                laxity = Integer.parseInt(columns[skip+2]);
+                departure = (int)Double.parseDouble(columns[skip+4]);
+            }catch(NumberFormatException excp){
+                stop("Line "+lineNumber+" of "+file+" contains a column that is not a number.");
+            }
+            checkLaxity(laxity, "Line "+lineNumber+" of "+file);
+            put(id, arrival, laxity, departure);
+        }
+        input.close();
+    }
+
+    // reads an XML file and writes its records
+    // each task must have all of id, t_arrive, w_size and t_leave, see xmlTrace
+    private static void readXML(File file) throws IOException{
+        try{
+            xmlTrace input = new xmlTrace(file);
+            while(input.next()){
+                checkLaxity(input.laxity(), "Task "+(clients+1)+" (line "+input.line()+") of "+file);     // w_size
+                put(input.id(), input.arrival(), input.laxity(), input.departure());
+            }
+            input.close();
+        }catch(XMLStreamException excp){
+            stop(file+" is not a valid XML trace, task "+(clients+1)+": "+excp.getMessage());
+        }catch(NumberFormatException excp){
+            stop(file+" contains a field that is not a number in task "+(clients+1)+".");
+        }
+    }
+
+    // adds a record to the buffer, writing the buffer when it is full
+    private static void put(int id, int arrival, int laxity, int departure) throws IOException{
+        if(buffer.remaining()<RECORD) flush();
+        buffer.putInt(id);
+        buffer.putInt(arrival);
+        buffer.putInt(laxity);
+        buffer.putInt(departure);
+        clients++;
+    }
+
+    // writes the buffer to the output and empties it
+    private static void flush() throws IOException{
+        buffer.flip();
+        while(buffer.hasRemaining()) output.write(buffer);
+        buffer.clear();
+    }
+
+    // stops the conversion with an error, the output is removed
+    private static void stop(String message){
+        System.out.println(message);
+        try{
+            output.close();
+        }catch(IOException excp){}
+        outputFile.delete();
+        System.exit(0);
+    }
+
+    // stops if the laxity is not a positive power of 2, the simulators need them so
+    private static void checkLaxity(int laxity, String where){
+        if(laxity<=0 || (laxity&(laxity-1))!=0) stop(where+": laxity "+laxity+" is not a positive power of 2.");
+    }
+}
+
+/*************************************************************************
+ *
+ *  Paper:
+ *  "Station Assignment with Reallocation"
+ *  Austin Halper, Miguel A. Mosteiro, Yulia Rossikova, and Prudence W. H. Wong
+ *  Proceedings of 14th International Symposium on Experimental Algorithms (SEA 2015)
+ *
+ *  Description: Simulator for CPR protocol
+ *  Class: xmlTrace
+ *
+ *  Data fields:
+ private InputStream stream;
+ private XMLStreamReader reader;
+ private int id;
+ private int arrival;
+ private int laxity;
+ private int departure;
+ private int line;
+ *
+ *  Methods:
+ xmlTrace(File file) throws IOException, XMLStreamException{
+ public boolean next() throws XMLStreamException{
+ public int id(){
+ public int arrival(){
+ public int laxity(){
+ public int departure(){
+ public int line(){
+ public void close() throws IOException, XMLStreamException{
+ *
+ *   Remarks
+ *   -------
+ *  The file is parsed as a stream of events, only the current task is kept in memory.
+ *  The laxity is w_size, the size rounded down to a power of 2, as the simulator needs.
+ *
+ *************************************************************************/
+
+
+class xmlTrace{
+    // reader of the <task> records of a trace file in the XML format of inputGen
+
+    // data fields
+    private InputStream stream;
+    private XMLStreamReader reader;
+    private int id;                     // fields of the current task
+    private int arrival;
+    private int laxity;
+    private int departure;
+    private int line;                   // line where the current task starts
+
+    // constructor
+    xmlTrace(File file) throws IOException, XMLStreamException{
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);                        // no DTD
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);    // no external entities
+        this.stream = new BufferedInputStream(new FileInputStream(file), 1<<16);
+        this.reader = factory.createXMLStreamReader(this.stream);
+    }
+
+    // reads the next task, returns false if there are no more tasks
+    public boolean next() throws XMLStreamException{
+        int fields = 0;                 // bit mask of the fields read: id, t_arrive, w_size, t_leave
+        String element = null;
+        // find the start of the next task
+        do{
+            if(!this.reader.hasNext()) return false;
+        }while(this.reader.next()!=XMLStreamConstants.START_ELEMENT || !this.reader.getLocalName().equals("task"));
+        this.line = this.reader.getLocation().getLineNumber();
+        // read its fields up to the end of the task
+        while(this.reader.nextTag()==XMLStreamConstants.START_ELEMENT){
+            element = this.reader.getLocalName();
+            switch(element){
+                case "id":
+                    this.id = Integer.parseInt(this.reader.getElementText().trim());
+                    fields |= 1;
+                    break;
+                case "t_arrive":
+                    this.arrival = (int)Double.parseDouble(this.reader.getElementText().trim());
+                    fields |= 2;
+                    break;
+                case "w_size":
+                    this.laxity = Integer.parseInt(this.reader.getElementText().trim());
+                    fields |= 4;
+                    break;
+                case "t_leave":
+                    this.departure = (int)Double.parseDouble(this.reader.getElementText().trim());
+                    fields |= 8;
+                    break;
+                default:                // size, the laxity before rounding
+                    this.reader.getElementText();
+            }
+        }
+        if(fields!=15) throw new XMLStreamException("Task at line "+this.line+" does not have all of id, t_arrive, w_size, t_leave.");
+        return true;
+    }
+
+    // fields of the current task
+    public int id(){
+        return this.id;
+    }
+
+    public int arrival(){
+        return this.arrival;
+    }
+
+    public int laxity(){
+        return this.laxity;
+    }
+
+    public int departure(){
+        return this.departure;
+    }
+
+    // line where the current task starts
+    public int line(){
+        return this.line;
+    }
+
+    // closes the file
+    public void close() throws IOException, XMLStreamException{
+        this.reader.close();
+        this.stream.close();
+    }
+}